@@ -0,0 +1,118 @@
+package ru.isands.newconverter.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.isands.newconverter.NewConverterApplication;
+import ru.isands.newconverter.enums.Format;
+import ru.isands.newconverter.job.StoredUpload;
+import ru.isands.newconverter.service.ParquetConverterService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts a generated dataset from {@code source} to {@code target} through {@link ParquetConverterService},
+ * with the application's own beans and the result cache off. Besides conversions per second, reports
+ * {@code rows} and {@code inputMB}/{@code outputMB} per second; run with {@code -prof gc} for the allocation rate.
+ * Datasets of the NESTED shape are flattened to strings on the way to CSV, as the CSV writer does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "--add-opens=java.base/java.nio=ALL-UNNAMED"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ConversionBenchmark {
+    private static final double MEGABYTE = 1024 * 1024;
+
+    @Param({"CSV", "JSON", "NDJSON", "XML", "PARQUET", "ARROW"})
+    public Format source;
+    @Param({"CSV", "JSON", "NDJSON", "XML", "PARQUET", "ARROW"})
+    public Format target;
+    @Param({"NARROW", "WIDE", "TYPED", "NESTED"})
+    public Shape shape;
+    @Param({"10000", "100000"})
+    public int rows;
+    /** app.parquet.writer: direct or avro */
+    @Param({"direct"})
+    public String parquetWriter;
+    /** app.parquet.parallelism: row groups read or written at once */
+    @Param({"1"})
+    public int parquetParallelism;
+
+    private ConfigurableApplicationContext context;
+    private ParquetConverterService service;
+    private StoredUpload input;
+    private Path tempDir;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long rows;
+        public double inputMB;
+        public double outputMB;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+            inputMB = 0;
+            outputMB = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("converter-benchmark");
+        context = new SpringApplicationBuilder(NewConverterApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .properties(
+                        "app.temp-dir=" + tempDir,
+                        "app.cache.enabled=false",
+                        "app.parquet.writer=" + parquetWriter,
+                        "app.parquet.parallelism=" + parquetParallelism,
+                        "logging.level.root=WARN")
+                .run();
+        service = context.getBean(ParquetConverterService.class);
+        Path file = Datasets.get(service, shape, rows, source);
+        input = new StoredUpload(file, file.getFileName().toString());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        FileUtils.deleteDirectory(tempDir.toFile());
+    }
+
+    @Benchmark
+    public long convert(Counters counters) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(NullOutputStream.INSTANCE);
+        service.convert(input, source, target, null, null).writeTo(out);
+        counters.rows += rows;
+        counters.inputMB += input.getSize() / MEGABYTE;
+        counters.outputMB += out.getByteCount() / MEGABYTE;
+        return out.getByteCount();
+    }
+}
@@ -0,0 +1,59 @@
+package ru.isands.newconverter.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import ru.isands.newconverter.enums.Format;
+import ru.isands.newconverter.job.StoredUpload;
+import ru.isands.newconverter.service.ParquetConverterService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * Generated benchmark inputs under {@code target/benchmark-data}. The rows are written as NDJSON and converted
+ * to the other formats by the service itself, so every input is exactly what the readers accept.
+ * Files are reused by later forks and runs.
+ */
+final class Datasets {
+    private static final Path DIRECTORY = Path.of("target", "benchmark-data");
+    private static final long SEED = 42;
+
+    private Datasets() {
+    }
+
+    static Path get(ParquetConverterService service, Shape shape, int rows, Format format) throws IOException {
+        Path file = DIRECTORY.resolve(shape.name().toLowerCase() + "-" + rows + format.getSuffix());
+        if (Files.exists(file)) {
+            return file;
+        }
+        Files.createDirectories(DIRECTORY);
+        Path partial = Files.createTempFile(DIRECTORY, file.getFileName().toString(), ".partial");
+        try {
+            try (OutputStream out = Files.newOutputStream(partial)) {
+                if (format == Format.NDJSON) {
+                    generate(shape, rows, out);
+                } else {
+                    StoredUpload source = new StoredUpload(get(service, shape, rows, Format.NDJSON), "source.ndjson");
+                    service.convert(source, Format.NDJSON, format, null, null).writeTo(out);
+                }
+            }
+            Files.move(partial, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(partial);
+        }
+        return file;
+    }
+
+    private static void generate(Shape shape, int rows, OutputStream out) throws IOException {
+        Random random = new Random(SEED);
+        try (SequenceWriter writer = new ObjectMapper().writer().withRootValueSeparator("\n").writeValues(out)) {
+            for (long index = 0; index < rows; index++) {
+                writer.write(shape.row(index, random));
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ru.isands.newconverter.benchmark;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Row layouts of the generated datasets. Rows come from a seeded generator, so every run converts the same data.
+ */
+public enum Shape {
+    /** A few numbers, strings and booleans, the typical export. */
+    NARROW {
+        @Override
+        Map<String, Object> row(long index, Random random) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", index);
+            row.put("name", "name " + index);
+            row.put("category", CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            row.put("count", random.nextInt(1000));
+            row.put("amount", random.nextDouble() * 1000);
+            row.put("active", random.nextBoolean());
+            return row;
+        }
+    },
+    /** 100 columns cycling through integers, doubles, strings and booleans. */
+    WIDE {
+        @Override
+        Map<String, Object> row(long index, Random random) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int column = 0; column < 100; column++) {
+                String name = "c" + column;
+                switch (column % 4) {
+                    case 0 -> row.put(name, random.nextInt());
+                    case 1 -> row.put(name, random.nextDouble());
+                    case 2 -> row.put(name, CATEGORIES[random.nextInt(CATEGORIES.length)] + column);
+                    default -> row.put(name, random.nextBoolean());
+                }
+            }
+            return row;
+        }
+    },
+    /** Dates, timestamps, decimals, UUIDs, quoted text and missing values. */
+    TYPED {
+        @Override
+        Map<String, Object> row(long index, Random random) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", index);
+            row.put("day", LocalDate.ofEpochDay(18_000 + random.nextInt(3650)).toString());
+            row.put("created", Instant.ofEpochMilli(1_600_000_000_000L + random.nextInt(Integer.MAX_VALUE)).toString());
+            row.put("price", BigDecimal.valueOf(random.nextInt(10_000_000), 2));
+            row.put("uid", new UUID(random.nextLong(), random.nextLong()).toString());
+            row.put("note", random.nextInt(10) == 0 ? null : "note, \"quoted\" " + index);
+            row.put("flag", random.nextBoolean());
+            return row;
+        }
+    },
+    /** Records, arrays and maps with data-dependent keys. */
+    NESTED {
+        @Override
+        Map<String, Object> row(long index, Random random) {
+            Map<String, Object> address = new LinkedHashMap<>();
+            address.put("city", CATEGORIES[random.nextInt(CATEGORIES.length)]);
+            address.put("zip", 100_000 + random.nextInt(900_000));
+            Map<String, Object> user = new LinkedHashMap<>();
+            user.put("name", "user " + index);
+            user.put("age", 18 + random.nextInt(60));
+            user.put("address", address);
+            Map<String, Object> attributes = new LinkedHashMap<>();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                attributes.put("attr-" + random.nextInt(20), random.nextInt(100));
+            }
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", index);
+            row.put("user", user);
+            row.put("tags", List.of(CATEGORIES[random.nextInt(CATEGORIES.length)], "tag" + random.nextInt(10)));
+            row.put("scores", List.of(random.nextInt(100), random.nextInt(100), random.nextInt(100)));
+            row.put("attributes", attributes);
+            return row;
+        }
+    };
+
+    private static final String[] CATEGORIES = {"alpha", "beta", "gamma", "delta"};
+
+    abstract Map<String, Object> row(long index, Random random);
+}
@@ -0,0 +1,336 @@
+package ru.isands.newconverter.arrow;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.Decimal256Vector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.ListVector;
+import org.apache.arrow.vector.complex.MapVector;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.ipc.ArrowWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import ru.isands.newconverter.parquet.AvroValues;
+import ru.isands.newconverter.parquet.ParquetSchema;
+import ru.isands.newconverter.pipeline.ColumnVector;
+import ru.isands.newconverter.pipeline.RecordBatch;
+import ru.isands.newconverter.schema.ColumnType;
+import ru.isands.newconverter.schema.TypeMismatchException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes {@link RecordBatch}es as Arrow IPC record batches, copying each column from its typed vector. Every column
+ * is nullable; dates are {@code date32}, timestamps UTC {@code timestamp[ms]} or {@code timestamp[us]}, decimals
+ * {@code decimal128} (or {@code decimal256} beyond 38 digits), UUIDs strings, nested values structs, lists and maps.
+ * A null is a row left unset, the vectors are cleared before every batch.
+ */
+public class ArrowBatchWriter implements Closeable {
+    private static final int MAX_DECIMAL128_PRECISION = 38;
+
+    private final BufferAllocator allocator = new RootAllocator();
+    private final ColumnType[] types;
+    private final Schema[] columnSchemas;
+    private final VectorSchemaRoot root;
+    private final ArrowWriter writer;
+    private final AvroValues avroValues = new AvroValues();
+    private byte[][] encodedStrings = new byte[16][];
+
+    /**
+     * @param fileFormat write the IPC file format, with a footer for random access, instead of the stream format
+     */
+    public ArrowBatchWriter(ParquetSchema schema, OutputStream out, boolean fileFormat) throws IOException {
+        this.types = schema.getColumnTypes().values().toArray(new ColumnType[0]);
+        List<Schema.Field> avroFields = schema.getAvroSchema().getFields();
+        this.columnSchemas = new Schema[avroFields.size()];
+        List<Field> fields = new ArrayList<>();
+        for (int column = 0; column < columnSchemas.length; column++) {
+            columnSchemas[column] = AvroValues.nonNullBranch(avroFields.get(column).schema());
+            fields.add(toField(avroFields.get(column).name(), columnSchemas[column]));
+        }
+        try {
+            this.root = VectorSchemaRoot.create(new org.apache.arrow.vector.types.pojo.Schema(fields), allocator);
+            DictionaryProvider dictionaries = new DictionaryProvider.MapDictionaryProvider();
+            this.writer = fileFormat
+                    ? new ArrowFileWriter(root, dictionaries, Channels.newChannel(out))
+                    : new ArrowStreamWriter(root, dictionaries, Channels.newChannel(out));
+            writer.start();
+        } catch (IOException | RuntimeException e) {
+            allocator.close();
+            throw e;
+        }
+    }
+
+    private static Field toField(String name, Schema schema) {
+        LogicalType logicalType = schema.getLogicalType();
+        return switch (schema.getType()) {
+            case RECORD -> {
+                List<Field> children = new ArrayList<>();
+                for (Schema.Field field : schema.getFields()) {
+                    children.add(toField(field.name(), AvroValues.nonNullBranch(field.schema())));
+                }
+                yield new Field(name, FieldType.nullable(ArrowType.Struct.INSTANCE), children);
+            }
+            case ARRAY -> new Field(name, FieldType.nullable(ArrowType.List.INSTANCE),
+                    List.of(toField("item", AvroValues.nonNullBranch(schema.getElementType()))));
+            case MAP -> {
+                Field key = new Field(MapVector.KEY_NAME, FieldType.notNullable(ArrowType.Utf8.INSTANCE), null);
+                Field value = toField(MapVector.VALUE_NAME, AvroValues.nonNullBranch(schema.getValueType()));
+                Field entries = new Field(MapVector.DATA_VECTOR_NAME, FieldType.notNullable(ArrowType.Struct.INSTANCE),
+                        List.of(key, value));
+                yield new Field(name, FieldType.nullable(new ArrowType.Map(false)), List.of(entries));
+            }
+            case INT -> leaf(name, logicalType instanceof LogicalTypes.Date
+                    ? new ArrowType.Date(DateUnit.DAY)
+                    : new ArrowType.Int(32, true));
+            case LONG -> {
+                if (logicalType instanceof LogicalTypes.TimestampMillis) {
+                    yield leaf(name, new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC"));
+                }
+                yield leaf(name, logicalType instanceof LogicalTypes.TimestampMicros
+                        ? new ArrowType.Timestamp(TimeUnit.MICROSECOND, "UTC")
+                        : new ArrowType.Int(64, true));
+            }
+            case BYTES -> {
+                LogicalTypes.Decimal decimal = (LogicalTypes.Decimal) logicalType;
+                int bitWidth = decimal.getPrecision() > MAX_DECIMAL128_PRECISION ? 256 : 128;
+                yield leaf(name, new ArrowType.Decimal(decimal.getPrecision(), decimal.getScale(), bitWidth));
+            }
+            case DOUBLE -> leaf(name, new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE));
+            case BOOLEAN -> leaf(name, ArrowType.Bool.INSTANCE);
+            case STRING -> leaf(name, ArrowType.Utf8.INSTANCE);
+            default -> throw new IllegalArgumentException("Unsupported Avro type " + schema.getType());
+        };
+    }
+
+    private static Field leaf(String name, ArrowType type) {
+        return new Field(name, FieldType.nullable(type), null);
+    }
+
+    public void write(RecordBatch batch) throws IOException {
+        int rows = batch.size();
+        for (int column = 0; column < types.length; column++) {
+            FieldVector target = root.getVector(column);
+            target.reset();
+            writeColumn(batch.getColumn(column), target, column, rows);
+        }
+        root.setRowCount(rows);
+        writer.writeBatch();
+    }
+
+    private void writeColumn(ColumnVector source, FieldVector target, int column, int rows) {
+        switch (types[column]) {
+            case BIT, INT -> {
+                ColumnVector.IntVector ints = (ColumnVector.IntVector) source;
+                IntVector vector = (IntVector) target;
+                for (int row = 0; row < rows; row++) {
+                    if (!ints.isNull(row)) vector.setSafe(row, ints.getInt(row));
+                }
+            }
+            case DATE -> {
+                ColumnVector.DateVector dates = (ColumnVector.DateVector) source;
+                DateDayVector vector = (DateDayVector) target;
+                for (int row = 0; row < rows; row++) {
+                    if (!dates.isNull(row)) vector.setSafe(row, dates.getInt(row));
+                }
+            }
+            case LONG -> {
+                ColumnVector.LongVector longs = (ColumnVector.LongVector) source;
+                BigIntVector vector = (BigIntVector) target;
+                for (int row = 0; row < rows; row++) {
+                    if (!longs.isNull(row)) vector.setSafe(row, longs.getLong(row));
+                }
+            }
+            case TIMESTAMP_MILLIS, TIMESTAMP_MICROS -> {
+                ColumnVector.TimestampVector timestamps = (ColumnVector.TimestampVector) source;
+                TimeStampVector vector = (TimeStampVector) target;
+                for (int row = 0; row < rows; row++) {
+                    if (!timestamps.isNull(row)) vector.setSafe(row, timestamps.getLong(row));
+                }
+            }
+            case DOUBLE -> {
+                ColumnVector.DoubleVector doubles = (ColumnVector.DoubleVector) source;
+                Float8Vector vector = (Float8Vector) target;
+                for (int row = 0; row < rows; row++) {
+                    if (!doubles.isNull(row)) vector.setSafe(row, doubles.getDouble(row));
+                }
+            }
+            case BOOLEAN -> {
+                ColumnVector.BooleanVector booleans = (ColumnVector.BooleanVector) source;
+                BitVector vector = (BitVector) target;
+                for (int row = 0; row < rows; row++) {
+                    if (!booleans.isNull(row)) vector.setSafe(row, booleans.getBoolean(row) ? 1 : 0);
+                }
+            }
+            case DECIMAL -> {
+                ColumnVector.DecimalVector decimals = (ColumnVector.DecimalVector) source;
+                for (int row = 0; row < rows; row++) {
+                    if (!decimals.isNull(row)) setDecimal(target, row, decimals.getDecimal(row));
+                }
+            }
+            case EMPTY, UUID, STRING -> writeStrings((ColumnVector.StringVector) source, (VarCharVector) target, rows);
+            case NESTED -> {
+                for (int row = 0; row < rows; row++) {
+                    Object value = source.get(row);
+                    if (value != null) {
+                        writeValue(target, row, avroValues.toAvro(value, columnSchemas[column]), columnSchemas[column]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Encodes every distinct string of the batch once, the vector holds each value only once.
+     */
+    private void writeStrings(ColumnVector.StringVector strings, VarCharVector vector, int rows) {
+        if (encodedStrings.length < strings.getDictionarySize()) {
+            encodedStrings = new byte[strings.getDictionarySize()][];
+        } else {
+            Arrays.fill(encodedStrings, 0, strings.getDictionarySize(), null);
+        }
+        for (int row = 0; row < rows; row++) {
+            if (strings.isNull(row)) {
+                continue;
+            }
+            int code = strings.getCode(row);
+            byte[] bytes = encodedStrings[code];
+            if (bytes == null) {
+                bytes = strings.getEntry(code).getBytes(StandardCharsets.UTF_8);
+                encodedStrings[code] = bytes;
+            }
+            vector.setSafe(row, bytes);
+        }
+    }
+
+    private static void setDecimal(FieldVector vector, int index, BigDecimal value) {
+        BigDecimal scaled;
+        int scale = ((ArrowType.Decimal) vector.getField().getType()).getScale();
+        try {
+            scaled = value.setScale(scale, RoundingMode.UNNECESSARY);
+        } catch (ArithmeticException e) {
+            throw new TypeMismatchException();
+        }
+        if (vector instanceof DecimalVector decimals) {
+            decimals.setSafe(index, scaled);
+        } else {
+            ((Decimal256Vector) vector).setSafe(index, scaled);
+        }
+    }
+
+    /**
+     * Writes a value in the Avro representation of {@link AvroValues}; {@code null}s are left unset.
+     */
+    private void writeValue(FieldVector vector, int index, Object value, Schema schema) {
+        if (value == null) {
+            return;
+        }
+        switch (schema.getType()) {
+            case RECORD -> {
+                StructVector struct = (StructVector) vector;
+                GenericRecord record = (GenericRecord) value;
+                struct.setIndexDefined(index);
+                for (Schema.Field field : schema.getFields()) {
+                    writeValue(struct.getChild(field.name()), index, record.get(field.pos()),
+                            AvroValues.nonNullBranch(field.schema()));
+                }
+            }
+            case ARRAY -> {
+                ListVector list = (ListVector) vector;
+                List<?> items = (List<?>) value;
+                int start = list.startNewValue(index);
+                Schema elementSchema = AvroValues.nonNullBranch(schema.getElementType());
+                for (int item = 0; item < items.size(); item++) {
+                    writeValue(list.getDataVector(), start + item, items.get(item), elementSchema);
+                }
+                list.endValue(index, items.size());
+            }
+            case MAP -> {
+                MapVector map = (MapVector) vector;
+                Map<?, ?> entries = (Map<?, ?>) value;
+                StructVector entryVector = (StructVector) map.getDataVector();
+                VarCharVector keys = (VarCharVector) entryVector.getChild(MapVector.KEY_NAME);
+                FieldVector values = entryVector.getChild(MapVector.VALUE_NAME);
+                Schema valueSchema = AvroValues.nonNullBranch(schema.getValueType());
+                int entry = map.startNewValue(index);
+                for (Map.Entry<?, ?> item : entries.entrySet()) {
+                    entryVector.setIndexDefined(entry);
+                    keys.setSafe(entry, String.valueOf(item.getKey()).getBytes(StandardCharsets.UTF_8));
+                    writeValue(values, entry, item.getValue(), valueSchema);
+                    entry++;
+                }
+                map.endValue(index, entries.size());
+            }
+            case INT -> {
+                if (vector instanceof DateDayVector dates) {
+                    dates.setSafe(index, (Integer) value);
+                } else {
+                    ((IntVector) vector).setSafe(index, (Integer) value);
+                }
+            }
+            case LONG -> {
+                if (vector instanceof TimeStampVector timestamps) {
+                    timestamps.setSafe(index, (Long) value);
+                } else {
+                    ((BigIntVector) vector).setSafe(index, (Long) value);
+                }
+            }
+            case BYTES -> {
+                int scale = ((LogicalTypes.Decimal) schema.getLogicalType()).getScale();
+                ByteBuffer unscaled = (ByteBuffer) value;
+                byte[] bytes = new byte[unscaled.remaining()];
+                unscaled.duplicate().get(bytes);
+                setDecimal(vector, index, new BigDecimal(new BigInteger(bytes), scale));
+            }
+            case DOUBLE -> ((Float8Vector) vector).setSafe(index, (Double) value);
+            case BOOLEAN -> ((BitVector) vector).setSafe(index, (Boolean) value ? 1 : 0);
+            case STRING -> ((VarCharVector) vector).setSafe(index, value.toString().getBytes(StandardCharsets.UTF_8));
+            default -> throw new IllegalArgumentException("Unsupported Avro type " + schema.getType());
+        }
+    }
+
+    /**
+     * Ends the stream, or writes the footer of the file format, and releases the vectors.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            root.close();
+            allocator.close();
+        }
+    }
+}
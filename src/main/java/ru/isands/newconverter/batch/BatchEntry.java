@@ -0,0 +1,33 @@
+package ru.isands.newconverter.batch;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import ru.isands.newconverter.enums.Format;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of one archive entry, as listed in the batch report.
+ *
+ * @param entry  name of the entry in the uploaded archive
+ * @param format format the entry was read as, {@code null} if it could not be determined
+ * @param output name of the converted entry in the returned archive, {@code null} if the conversion failed
+ * @param size   size of the converted entry in bytes, {@code null} if the conversion failed
+ * @param error  why the entry was not converted, {@code null} on success
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+record BatchEntry(int index, String entry, Format format, String output, Long size, String error,
+                  @JsonIgnore Path file, @JsonIgnore long crc) {
+
+    static BatchEntry converted(int index, String entry, Format format, String output, Path file, long size, long crc) {
+        return new BatchEntry(index, entry, format, output, size, null, file, crc);
+    }
+
+    static BatchEntry failed(int index, String entry, Format format, String error) {
+        return new BatchEntry(index, entry, format, null, null, error, null, 0);
+    }
+
+    boolean isConverted() {
+        return error == null;
+    }
+}
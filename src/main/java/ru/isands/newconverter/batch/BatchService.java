@@ -0,0 +1,326 @@
+package ru.isands.newconverter.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.isands.newconverter.enums.Compression;
+import ru.isands.newconverter.enums.Format;
+import ru.isands.newconverter.exception.ConversionException;
+import ru.isands.newconverter.exception.ServerBusyException;
+import ru.isands.newconverter.job.StoredUpload;
+import ru.isands.newconverter.parquet.ParquetQuery;
+import ru.isands.newconverter.parquet.ParquetWriteOptions;
+import ru.isands.newconverter.service.ParquetConverterService;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Converts every entry of a ZIP archive and streams the results back as a ZIP. Entries are extracted to
+ * {@code app.temp-dir/batch} and converted on a bounded worker pool shared by all batches; each result is
+ * written to the response as soon as it is ready, so the output order follows completion, not the archive.
+ * A failing entry is listed in {@value #REPORT_NAME} at the end of the archive and does not stop the batch.
+ */
+@Service
+public class BatchService {
+    static final String REPORT_NAME = "batch-report.json";
+    private static final Logger log = LoggerFactory.getLogger(BatchService.class);
+
+    private final ParquetConverterService converterService;
+    private final Path batchDir;
+    private final int maxEntries;
+    private final long maxEntrySize;
+    private final ThreadPoolExecutor executor;
+    private final ObjectMapper reportMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public BatchService(ParquetConverterService converterService,
+                        @Value("${app.temp-dir}") String tempDir,
+                        @Value("${app.batch.workers:0}") int workers,
+                        @Value("${app.batch.max-entries:10000}") int maxEntries,
+                        @Value("${app.batch.max-entry-size:100MB}") DataSize maxEntrySize) {
+        this.converterService = converterService;
+        this.batchDir = Paths.get(tempDir, "batch");
+        this.maxEntries = maxEntries;
+        this.maxEntrySize = maxEntrySize.toBytes();
+        int threads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, "batch-worker-" + threadNumber.incrementAndGet()));
+    }
+
+    /**
+     * Batches do not outlive a request, anything left here belongs to a previous run.
+     */
+    @PostConstruct
+    void removeOrphanedFiles() throws IOException {
+        FileUtils.deleteDirectory(batchDir.toFile());
+        Files.createDirectories(batchDir);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @param format format of every entry, {@code null} to tell it from the entry's file extension
+     */
+    public StreamingResponseBody convert(MultipartFile archive, Format format, Format targetFormat,
+                                         ParquetQuery query, ParquetWriteOptions options) {
+        if (archive.isEmpty()) {
+            throw new ConversionException("Uploaded archive is empty");
+        }
+        // Fail with a 400 before the response is committed if this is not a ZIP at all
+        try (ZipInputStream zip = new ZipInputStream(archive.getInputStream())) {
+            if (zip.getNextEntry() == null) {
+                throw new ConversionException("Uploaded file is not a ZIP archive or has no entries");
+            }
+        } catch (IOException e) {
+            throw new ConversionException("Failed to read ZIP archive: " + e.getMessage(), e);
+        }
+        return out -> new Batch(format, targetFormat, query, options).run(archive, out);
+    }
+
+    /**
+     * State of one batch while its response is streamed.
+     */
+    private class Batch {
+        private final Format format;
+        private final Format targetFormat;
+        private final ParquetQuery query;
+        private final ParquetWriteOptions options;
+        private final Path directory;
+        private final CompletionService<BatchEntry> completion = new ExecutorCompletionService<>(executor);
+        private final List<Future<BatchEntry>> tasks = new ArrayList<>();
+        private final List<BatchEntry> report = new ArrayList<>();
+        private final Set<String> outputNames = new HashSet<>();
+        private int pending;
+
+        Batch(Format format, Format targetFormat, ParquetQuery query, ParquetWriteOptions options) {
+            this.format = format;
+            this.targetFormat = targetFormat;
+            this.query = query;
+            this.options = options;
+            this.directory = batchDir.resolve(UUID.randomUUID().toString());
+        }
+
+        void run(MultipartFile archive, OutputStream out) throws IOException {
+            // Entries extracted ahead of the workers, bounds the temp space a batch takes
+            int window = executor.getMaximumPoolSize() * 2;
+            try (ZipInputStream zip = new ZipInputStream(archive.getInputStream());
+                 ZipOutputStream result = new ZipOutputStream(out)) {
+                Files.createDirectories(directory);
+                ZipEntry entry;
+                int index = 0;
+                while ((entry = zip.getNextEntry()) != null) {
+                    if (entry.isDirectory() || entry.getName().startsWith("__MACOSX/")) {
+                        continue;
+                    }
+                    if (index == maxEntries) {
+                        report.add(BatchEntry.failed(index, entry.getName(), null,
+                                "Batch limit of " + maxEntries + " entries reached, remaining entries were skipped"));
+                        break;
+                    }
+                    submit(index++, entry.getName(), zip);
+                    while (pending >= window) {
+                        write(result, awaitNext());
+                    }
+                }
+                while (pending > 0) {
+                    write(result, awaitNext());
+                }
+                report.sort(Comparator.comparingInt(BatchEntry::index));
+                result.putNextEntry(new ZipEntry(REPORT_NAME));
+                reportMapper.writeValue(CloseShieldOutputStream.wrap(result), report);
+                result.closeEntry();
+            } finally {
+                // The client may have gone away, nothing still running is wanted
+                for (Future<BatchEntry> task : tasks) {
+                    task.cancel(true);
+                }
+                FileUtils.deleteQuietly(directory.toFile());
+            }
+        }
+
+        private void submit(int index, String name, InputStream content) throws IOException {
+            Format entryFormat = format != null ? format : formatOf(name);
+            if (entryFormat == null) {
+                report.add(BatchEntry.failed(index, name, null, "Unknown file extension, pass the format parameter"));
+                return;
+            }
+            Path input = Files.createTempFile(directory, "entry", entryFormat.getSuffix());
+            if (!copy(content, input)) {
+                Files.delete(input);
+                report.add(BatchEntry.failed(index, name, entryFormat,
+                        "Entry is larger than " + DataSize.ofBytes(maxEntrySize).toMegabytes() + "MB"));
+                return;
+            }
+            String output = outputName(name);
+            tasks.add(completion.submit(() -> convertEntry(index, name, entryFormat, output, input)));
+            pending++;
+        }
+
+        /**
+         * @return {@code false} if the entry is larger than {@code app.batch.max-entry-size}
+         */
+        private boolean copy(InputStream content, Path target) throws IOException {
+            byte[] buffer = new byte[64 * 1024];
+            long size = 0;
+            try (OutputStream file = Files.newOutputStream(target)) {
+                int read;
+                while ((read = content.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxEntrySize) {
+                        return false;
+                    }
+                    file.write(buffer, 0, read);
+                }
+            }
+            return true;
+        }
+
+        private BatchEntry convertEntry(int index, String name, Format entryFormat, String output, Path input) {
+            Path file = null;
+            try {
+                file = Files.createTempFile(directory, "result", targetFormat.getSuffix());
+                CRC32 crc = new CRC32();
+                try (OutputStream result = new CheckedOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(file)), crc)) {
+                    converterService.convert(new StoredUpload(input, name), entryFormat, targetFormat, query, options)
+                            .writeTo(result);
+                }
+                return BatchEntry.converted(index, name, entryFormat, output, file, Files.size(file), crc.getValue());
+            } catch (ConversionException | ServerBusyException e) {
+                return failed(index, name, entryFormat, file, e.getMessage());
+            } catch (Exception e) {
+                log.warn("Batch entry {} failed", name, e);
+                return failed(index, name, entryFormat, file, "Conversion failed: " + e.getMessage());
+            } finally {
+                FileUtils.deleteQuietly(input.toFile());
+            }
+        }
+
+        private BatchEntry failed(int index, String name, Format entryFormat, Path file, String error) {
+            if (file != null) {
+                FileUtils.deleteQuietly(file.toFile());
+            }
+            return BatchEntry.failed(index, name, entryFormat, error);
+        }
+
+        private BatchEntry awaitNext() throws IOException {
+            try {
+                BatchEntry entry = completion.take().get();
+                pending--;
+                return entry;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConversionException("Batch conversion was interrupted", e);
+            } catch (ExecutionException e) {
+                // convertEntry reports its own failures
+                throw new IOException(e.getCause());
+            }
+        }
+
+        private void write(ZipOutputStream result, BatchEntry entry) throws IOException {
+            report.add(entry);
+            if (!entry.isConverted()) {
+                return;
+            }
+            try {
+                ZipEntry zipEntry = new ZipEntry(entry.output());
+                // Parquet is compressed already, deflating it again costs time for nothing
+                if (targetFormat == Format.PARQUET) {
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(entry.size());
+                    zipEntry.setCompressedSize(entry.size());
+                    zipEntry.setCrc(entry.crc());
+                }
+                result.putNextEntry(zipEntry);
+                Files.copy(entry.file(), result);
+                result.closeEntry();
+            } finally {
+                FileUtils.deleteQuietly(entry.file().toFile());
+            }
+        }
+
+        /**
+         * Name of the result: the entry's path without {@code .} and {@code ..} segments, so the archive
+         * extracts safely, with the target extension instead of the original one and made unique.
+         */
+        private String outputName(String entryName) {
+            List<String> segments = new ArrayList<>();
+            for (String segment : entryName.split("[/\\\\]")) {
+                if (!segment.isEmpty() && !segment.equals(".") && !segment.equals("..")) {
+                    segments.add(segment);
+                }
+            }
+            String path = segments.isEmpty() ? "entry" : stripCompression(String.join("/", segments));
+            int slash = path.lastIndexOf('/');
+            int dot = path.lastIndexOf('.');
+            String base = dot > slash + 1 ? path.substring(0, dot) : path;
+            String name = base + targetFormat.getSuffix();
+            for (int copy = 2; !outputNames.add(name) || name.equals(REPORT_NAME); copy++) {
+                name = base + "-" + copy + targetFormat.getSuffix();
+            }
+            return name;
+        }
+    }
+
+    private static Format formatOf(String entryName) {
+        String name = stripCompression(entryName.toLowerCase(Locale.ROOT));
+        for (Format candidate : Format.values()) {
+            if (name.endsWith(candidate.getSuffix())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return {@code entryName} without a compression suffix, entries like data.csv.gz are read decompressed
+     */
+    private static String stripCompression(String entryName) {
+        for (Compression compression : Compression.values()) {
+            String suffix = compression.getSuffix();
+            if (!suffix.isEmpty() && entryName.toLowerCase(Locale.ROOT).endsWith(suffix)) {
+                return entryName.substring(0, entryName.length() - suffix.length());
+            }
+        }
+        return entryName;
+    }
+}
@@ -0,0 +1,339 @@
+package ru.isands.newconverter.cache;
+
+import jakarta.annotation.PostConstruct;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.isands.newconverter.enums.Format;
+import ru.isands.newconverter.exception.ConversionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Conversion results on local disk, keyed by a SHA-256 of the input bytes, the formats and the request options.
+ * Least recently used results are evicted once the total size exceeds {@code app.cache.max-size}. A result is
+ * written to the cache while it streams to the first client; identical requests arriving meanwhile wait for it
+ * instead of converting again.
+ */
+@Component
+public class ResultCache {
+    private static final Logger log = LoggerFactory.getLogger(ResultCache.class);
+
+    private final boolean enabled;
+    private final long maxSize;
+    private final Duration waitTimeout;
+    private final Path cacheDir;
+    // Access-ordered, guarded by this
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize;
+    private final Map<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ResultCache(@Value("${app.cache.enabled:true}") boolean enabled,
+                       @Value("${app.cache.max-size:1GB}") DataSize maxSize,
+                       @Value("${app.cache.wait-timeout:60s}") Duration waitTimeout,
+                       @Value("${app.temp-dir}") String tempDir) {
+        this.enabled = enabled;
+        this.maxSize = maxSize.toBytes();
+        this.waitTimeout = waitTimeout;
+        this.cacheDir = Paths.get(tempDir, "cache");
+    }
+
+    /**
+     * The index lives in memory, results left by a previous run are unreachable.
+     */
+    @PostConstruct
+    void removeOrphanedFiles() throws IOException {
+        FileUtils.deleteDirectory(cacheDir.toFile());
+        Files.createDirectories(cacheDir);
+    }
+
+    /**
+     * @param options    request options that change the result, in a stable textual form
+     * @param conversion runs the conversion on a miss; it may throw to reject the request before anything is sent
+     */
+    public StreamingResponseBody get(MultipartFile input, Format inputFormat, Format targetFormat, String options,
+                                     Supplier<StreamingResponseBody> conversion) {
+        if (!enabled) {
+            return conversion.get();
+        }
+        String key = keyOf(input, inputFormat, targetFormat, options);
+        InputStream cached = open(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return out -> {
+                try (cached) {
+                    cached.transferTo(out);
+                }
+            };
+        }
+        CompletableFuture<Path> fill = new CompletableFuture<>();
+        CompletableFuture<Path> running = inFlight.putIfAbsent(key, fill);
+        if (running != null) {
+            return out -> {
+                try (InputStream result = await(key, running)) {
+                    if (result != null) {
+                        hits.incrementAndGet();
+                        result.transferTo(out);
+                        return;
+                    }
+                }
+                // The first request failed, is not cached or takes too long: convert without the cache
+                misses.incrementAndGet();
+                conversion.get().writeTo(out);
+            };
+        }
+        misses.incrementAndGet();
+        StreamingResponseBody result;
+        try {
+            result = conversion.get();
+        } catch (RuntimeException | Error e) {
+            abandon(key, fill, null);
+            throw e;
+        }
+        return out -> {
+            Path partial = null;
+            boolean committed = false;
+            try {
+                partial = Files.createTempFile(cacheDir, "fill_", ".tmp");
+                Path file = partial;
+                // Results beyond max-size are not cached: the copy stops there and waiting requests convert on their own
+                CappedOutputStream copy = new CappedOutputStream(Files.newOutputStream(file), maxSize,
+                        () -> abandon(key, fill, file));
+                try (copy) {
+                    result.writeTo(new TeeOutputStream(out, copy));
+                }
+                if (!copy.isExceeded()) {
+                    commit(key, fill, file);
+                    committed = true;
+                }
+            } catch (IOException e) {
+                if (partial != null) {
+                    throw e;
+                }
+                // Nothing to cache into, the result is still sent
+                log.warn("Could not create a cache file: {}", e.getMessage());
+                abandon(key, fill, null);
+                result.writeTo(out);
+            } finally {
+                if (!committed) {
+                    abandon(key, fill, partial);
+                }
+            }
+        };
+    }
+
+    private String keyOf(MultipartFile input, Format inputFormat, Format targetFormat, String options) {
+        try (InputStream in = input.getInputStream()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+            digest.update((inputFormat + "|" + targetFormat + "|" + options).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest()) + targetFormat.getSuffix();
+        } catch (IOException e) {
+            throw new ConversionException("Failed to read uploaded file: " + e.getMessage(), e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Opens the stored result under the lock, so eviction cannot remove it between lookup and open.
+     */
+    private synchronized InputStream open(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return Files.newInputStream(entry.path);
+        } catch (IOException e) {
+            entries.remove(key);
+            totalSize -= entry.size;
+            return null;
+        }
+    }
+
+    /**
+     * @return the result of the request converting the same input, {@code null} if it failed or takes longer
+     * than {@code app.cache.wait-timeout}
+     */
+    private InputStream await(String key, CompletableFuture<Path> running) {
+        try {
+            return running.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS) != null ? open(key) : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Conversion was interrupted", e);
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+
+    private void commit(String key, CompletableFuture<Path> fill, Path partial) throws IOException {
+        long size = Files.size(partial);
+        Path path = cacheDir.resolve(key);
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(path, size));
+            if (previous != null) {
+                totalSize -= previous.size;
+            }
+            totalSize += size;
+            evict();
+        }
+        inFlight.remove(key, fill);
+        fill.complete(path);
+    }
+
+    /**
+     * Gives up the fill; requests waiting for it convert on their own. Safe to call more than once.
+     */
+    private void abandon(String key, CompletableFuture<Path> fill, Path partial) {
+        if (partial != null) {
+            FileUtils.deleteQuietly(partial.toFile());
+        }
+        inFlight.remove(key, fill);
+        fill.complete(null);
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalSize > maxSize && eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            eldest.remove();
+            totalSize -= entry.size;
+            evictions.incrementAndGet();
+            // Clients still streaming the file keep reading it, the directory entry goes away now
+            if (!FileUtils.deleteQuietly(entry.path.toFile())) {
+                log.warn("Could not delete evicted cache file {}", entry.path);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            FileUtils.deleteQuietly(entry.path.toFile());
+        }
+        entries.clear();
+        totalSize = 0;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getSize() {
+        return totalSize;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("size", totalSize);
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits.get());
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    private record Entry(Path path, long size) {
+    }
+
+    /**
+     * Copy of a result that stops writing once it grows beyond {@code limit} bytes and calls {@code onExceeded},
+     * while the response it is teed from goes on.
+     */
+    private static final class CappedOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final long limit;
+        private final Runnable onExceeded;
+        private long count;
+
+        CappedOutputStream(OutputStream out, long limit, Runnable onExceeded) {
+            this.out = out;
+            this.limit = limit;
+            this.onExceeded = onExceeded;
+        }
+
+        boolean isExceeded() {
+            return count > limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (isExceeded()) {
+                return;
+            }
+            count += len;
+            if (isExceeded()) {
+                out.close();
+                onExceeded.run();
+                return;
+            }
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!isExceeded()) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ru.isands.newconverter.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.format.FormatterRegistry;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.isands.newconverter.parquet.ParquetWriteOptions;
+import ru.isands.newconverter.pipeline.ConversionPool;
+
+/**
+ * Converter beans bound from {@code app.*} properties.
+ */
+@Configuration
+@EnableScheduling
+public class ConverterConfig implements WebMvcConfigurer {
+
+    @Bean
+    @ConfigurationProperties(prefix = "app.parquet")
+    public ParquetWriteOptions parquetWriteOptions() {
+        return new ParquetWriteOptions();
+    }
+
+    @Bean
+    public ConversionPool conversionPool(@Value("${app.parallelism:0}") int parallelism) {
+        return new ConversionPool(parallelism);
+    }
+
+    @Override
+    public void addFormatters(FormatterRegistry registry) {
+        // Sizes in request parameters use the same notation as application.yml, e.g. 64MB
+        registry.addConverter(String.class, DataSize.class, DataSize::parse);
+    }
+}
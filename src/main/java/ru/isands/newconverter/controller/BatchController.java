@@ -0,0 +1,52 @@
+package ru.isands.newconverter.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springdoc.core.annotations.ParameterObject;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.isands.newconverter.batch.BatchService;
+import ru.isands.newconverter.enums.Format;
+import ru.isands.newconverter.parquet.ParquetQuery;
+import ru.isands.newconverter.parquet.ParquetWriteOptions;
+
+@RestController
+@RequestMapping("/api/batch")
+@Tag(name = "Batch", description = "Convert every file of a ZIP archive in one request")
+public class BatchController {
+
+    private final BatchService batchService;
+
+    public BatchController(BatchService batchService) {
+        this.batchService = batchService;
+    }
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(description = "Convert the entries of a ZIP archive concurrently and stream a ZIP of the results, "
+            + "with batch-report.json listing the outcome of every entry")
+    public ResponseEntity<StreamingResponseBody> convert(
+            @Parameter(description = "ZIP archive") @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Format of all entries, by default taken from each entry's extension",
+                    schema = @Schema(type = "string", allowableValues = {"PARQUET", "CSV", "JSON", "NDJSON", "XML", "ARROW", "ARROW_STREAM"}))
+            @RequestParam(required = false) String format,
+            @Parameter(description = "Target file format", required = true,
+                    schema = @Schema(type = "string", allowableValues = {"PARQUET", "CSV", "JSON", "NDJSON", "XML", "ARROW", "ARROW_STREAM"}))
+            @RequestParam String target,
+            @ParameterObject ParquetQuery query,
+            @ParameterObject ParquetWriteOptions options) {
+        StreamingResponseBody result = batchService.convert(file, format != null ? Format.valueOf(format) : null,
+                Format.valueOf(target), query, options);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=batch.zip")
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(result);
+    }
+}
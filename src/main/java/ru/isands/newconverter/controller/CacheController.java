@@ -0,0 +1,32 @@
+package ru.isands.newconverter.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.isands.newconverter.cache.ResultCache;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/cache")
+@Tag(name = "Cache", description = "Cached conversion results")
+public class CacheController {
+
+    private final ResultCache resultCache;
+
+    public CacheController(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+    @GetMapping
+    @Operation(description = "Entries, size, hits, misses and evictions")
+    public Map<String, Object> getStats() {
+        return resultCache.getStats();
+    }
+    @DeleteMapping
+    @Operation(description = "Remove all cached results")
+    public ResponseEntity<Void> clear() {
+        resultCache.clear();
+        return ResponseEntity.noContent().build();
+    }
+}
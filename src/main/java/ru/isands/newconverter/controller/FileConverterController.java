@@ -1,13 +1,19 @@
 package ru.isands.newconverter.controller;
 import io.swagger.v3.oas.annotations.media.Schema;
-import org.springframework.core.io.Resource;
+import org.springdoc.core.annotations.ParameterObject;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.isands.newconverter.enums.Compression;
 import ru.isands.newconverter.enums.Format;
+import ru.isands.newconverter.parquet.DatasetLayout;
+import ru.isands.newconverter.parquet.ParquetQuery;
+import ru.isands.newconverter.parquet.ParquetWriteOptions;
 import ru.isands.newconverter.service.ParquetConverterService;
+import ru.isands.newconverter.utils.CompressionUtil;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -18,48 +24,125 @@ import io.swagger.v3.oas.annotations.Parameter;
 public class FileConverterController {
 
     private final ParquetConverterService converterService;
+    private final CompressionUtil compressionUtil;
 
-    public FileConverterController(ParquetConverterService converterService) {
+    public FileConverterController(ParquetConverterService converterService, CompressionUtil compressionUtil) {
         this.converterService = converterService;
+        this.compressionUtil = compressionUtil;
     }
     @PostMapping(value = "/json", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(description = "parquet -> json")
-    public ResponseEntity<Resource> getJson(@Parameter(description = "Input file") @RequestParam("file") MultipartFile file) throws Exception{
-        Resource result = converterService.convertJson(file, Format.PARQUET);
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=file.json")
-                .contentType(MediaType.parseMediaType(MediaType.MULTIPART_FORM_DATA_VALUE))
-                .body(result);
+    public ResponseEntity<StreamingResponseBody> getJson(
+            @Parameter(description = "Input file") @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Compress the result file itself; NONE sends it uncompressed whatever Accept-Encoding says")
+            @RequestParam(required = false) Compression compression,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @ParameterObject ParquetQuery query) throws Exception{
+        StreamingResponseBody result = converterService.convertJson(file, Format.PARQUET, query);
+        return compressionUtil.respond(result, "file.json", MediaType.parseMediaType(MediaType.MULTIPART_FORM_DATA_VALUE),
+                compression, acceptEncoding, true);
+    }
+    @PostMapping(value = "/ndjson", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(description = "parquet -> ndjson (one JSON object per line)")
+    public ResponseEntity<StreamingResponseBody> getNdjson(
+            @Parameter(description = "Input file") @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Compress the result file itself; NONE sends it uncompressed whatever Accept-Encoding says")
+            @RequestParam(required = false) Compression compression,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @ParameterObject ParquetQuery query) throws Exception{
+        StreamingResponseBody result = converterService.convertNdjson(file, Format.PARQUET, query);
+        return compressionUtil.respond(result, "file.ndjson", MediaType.parseMediaType(MediaType.MULTIPART_FORM_DATA_VALUE),
+                compression, acceptEncoding, true);
     }
     @Operation(description = "parquet -> csv")
     @PostMapping(value = "/csv", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<Resource> getCsv(@Parameter(description = "Input file") @RequestParam("file") MultipartFile file) throws Exception{
-        Resource result = converterService.convertCsv(file, Format.PARQUET);
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=file.csv")
-                .contentType(MediaType.parseMediaType(MediaType.MULTIPART_FORM_DATA_VALUE))
-                .body(result);
+    public ResponseEntity<StreamingResponseBody> getCsv(
+            @Parameter(description = "Input file") @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Compress the result file itself; NONE sends it uncompressed whatever Accept-Encoding says")
+            @RequestParam(required = false) Compression compression,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @ParameterObject ParquetQuery query) throws Exception{
+        StreamingResponseBody result = converterService.convertCsv(file, Format.PARQUET, query);
+        return compressionUtil.respond(result, "file.csv", MediaType.parseMediaType(MediaType.MULTIPART_FORM_DATA_VALUE),
+                compression, acceptEncoding, true);
     }
     @PostMapping(value = "/xml", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(description = "parquet -> xml")
-    public ResponseEntity<Resource> getXml(@Parameter(description = "Input file") @RequestParam("file") MultipartFile file) throws Exception{
-        Resource result = converterService.convertXml(file, Format.PARQUET);
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=file.xml")
-                .contentType(MediaType.parseMediaType(MediaType.MULTIPART_FORM_DATA_VALUE))
-                .body(result);
+    public ResponseEntity<StreamingResponseBody> getXml(
+            @Parameter(description = "Input file") @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Compress the result file itself; NONE sends it uncompressed whatever Accept-Encoding says")
+            @RequestParam(required = false) Compression compression,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @ParameterObject ParquetQuery query) throws Exception{
+        StreamingResponseBody result = converterService.convertXml(file, Format.PARQUET, query);
+        return compressionUtil.respond(result, "file.xml", MediaType.parseMediaType(MediaType.MULTIPART_FORM_DATA_VALUE),
+                compression, acceptEncoding, true);
     }
     @PostMapping(value = "/parquet", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     @Operation(description = "any -> parquet")
-    public ResponseEntity<Resource> getParquet(
+    public ResponseEntity<StreamingResponseBody> getParquet(
             @Parameter(description = "Input file") @RequestParam("file") MultipartFile file,
             @Parameter(description = "Input file format", required = true,
-                    schema = @Schema(type = "string", allowableValues = {"CSV", "JSON", "XML"}, defaultValue = "CSV"))
-            @RequestParam String format) throws Exception{
-        Resource result = converterService.convertParquet(file, Format.valueOf(format));
+                    schema = @Schema(type = "string", allowableValues = {"CSV", "JSON", "NDJSON", "XML", "ARROW", "ARROW_STREAM"}, defaultValue = "CSV"))
+            @RequestParam String format,
+            @ParameterObject ParquetWriteOptions options) throws Exception{
+        StreamingResponseBody result = converterService.convertParquet(file, Format.valueOf(format), options);
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=file.parquet")
                 .contentType(MediaType.parseMediaType(MediaType.MULTIPART_FORM_DATA_VALUE))
                 .body(result);
     }
+    @PostMapping(value = "/append", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(description = "parquet + any -> parquet: appends the rows of data to the Parquet file, whose row groups "
+            + "are copied as they are")
+    public ResponseEntity<StreamingResponseBody> appendParquet(
+            @Parameter(description = "Existing Parquet file") @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Rows to append, with columns of the Parquet file") @RequestParam("data") MultipartFile data,
+            @Parameter(description = "Format of data", required = true,
+                    schema = @Schema(type = "string", allowableValues = {"CSV", "JSON", "NDJSON", "XML", "ARROW", "ARROW_STREAM"}, defaultValue = "CSV"))
+            @RequestParam String format,
+            @ParameterObject ParquetWriteOptions options) throws Exception{
+        StreamingResponseBody result = converterService.appendParquet(file, data, Format.valueOf(format), options);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=file.parquet")
+                .contentType(MediaType.parseMediaType(MediaType.MULTIPART_FORM_DATA_VALUE))
+                .body(result);
+    }
+    @PostMapping(value = "/arrow", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(description = "any -> Arrow IPC, as a file or as a stream")
+    public ResponseEntity<StreamingResponseBody> getArrow(
+            @Parameter(description = "Input file") @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Input file format", required = true,
+                    schema = @Schema(type = "string", allowableValues = {"PARQUET", "CSV", "JSON", "NDJSON", "XML", "ARROW", "ARROW_STREAM"}, defaultValue = "CSV"))
+            @RequestParam String format,
+            @Parameter(description = "Write the IPC stream format instead of the file format")
+            @RequestParam(defaultValue = "false") boolean stream,
+            @Parameter(description = "Compress the result file itself; NONE sends it uncompressed whatever Accept-Encoding says")
+            @RequestParam(required = false) Compression compression,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @ParameterObject ParquetQuery query) throws Exception{
+        StreamingResponseBody result = converterService.convertArrow(file, Format.valueOf(format), query, !stream);
+        Format targetFormat = stream ? Format.ARROW_STREAM : Format.ARROW;
+        return compressionUtil.respond(result, "file" + targetFormat.getSuffix(), MediaType.parseMediaType(stream
+                        ? "application/vnd.apache.arrow.stream"
+                        : "application/vnd.apache.arrow.file"),
+                compression, acceptEncoding, true);
+    }
+    @PostMapping(value = "/dataset", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(description = "any -> partitioned Parquet dataset: a ZIP of column=value/part-NNNNN.parquet files "
+            + "and _manifest.json")
+    public ResponseEntity<StreamingResponseBody> getDataset(
+            @Parameter(description = "Input file") @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Input file format", required = true,
+                    schema = @Schema(type = "string", allowableValues = {"PARQUET", "CSV", "JSON", "NDJSON", "XML", "ARROW", "ARROW_STREAM"}, defaultValue = "CSV"))
+            @RequestParam String format,
+            @ParameterObject DatasetLayout layout,
+            @ParameterObject ParquetQuery query,
+            @ParameterObject ParquetWriteOptions options) throws Exception{
+        StreamingResponseBody result = converterService.convertDataset(file, Format.valueOf(format), query, layout, options);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=dataset.zip")
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(result);
+    }
 }
@@ -0,0 +1,80 @@
+package ru.isands.newconverter.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springdoc.core.annotations.ParameterObject;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.isands.newconverter.enums.Compression;
+import ru.isands.newconverter.enums.Format;
+import ru.isands.newconverter.job.ConversionJob;
+import ru.isands.newconverter.job.JobService;
+import ru.isands.newconverter.parquet.ParquetQuery;
+import ru.isands.newconverter.parquet.ParquetWriteOptions;
+import ru.isands.newconverter.utils.CompressionUtil;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@RestController
+@RequestMapping("/api/jobs")
+@Tag(name = "Jobs", description = "Asynchronous conversions: submit, poll the status, download the result")
+public class JobController {
+
+    private final JobService jobService;
+    private final CompressionUtil compressionUtil;
+
+    public JobController(JobService jobService, CompressionUtil compressionUtil) {
+        this.jobService = jobService;
+        this.compressionUtil = compressionUtil;
+    }
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(description = "Queue a conversion, responds 429 when the queue is full")
+    public ResponseEntity<ConversionJob> submit(
+            @Parameter(description = "Input file") @RequestParam("file") MultipartFile file,
+            @Parameter(description = "Input file format", required = true,
+                    schema = @Schema(type = "string", allowableValues = {"PARQUET", "CSV", "JSON", "NDJSON", "XML", "ARROW", "ARROW_STREAM"}))
+            @RequestParam String format,
+            @Parameter(description = "Target file format", required = true,
+                    schema = @Schema(type = "string", allowableValues = {"PARQUET", "CSV", "JSON", "NDJSON", "XML", "ARROW", "ARROW_STREAM"}))
+            @RequestParam String target,
+            @ParameterObject ParquetQuery query,
+            @ParameterObject ParquetWriteOptions options) {
+        ConversionJob job = jobService.submit(file, Format.valueOf(format), Format.valueOf(target), query, options);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + job.getId()))
+                .body(job);
+    }
+    @GetMapping("/{id}")
+    @Operation(description = "Job status")
+    public ConversionJob getJob(@PathVariable String id) {
+        return jobService.getJob(id);
+    }
+    @GetMapping("/{id}/result")
+    @Operation(description = "Download the result of a finished job, responds 409 while it is not done")
+    public ResponseEntity<StreamingResponseBody> getResult(
+            @PathVariable String id,
+            @Parameter(description = "Compress the result file itself; NONE sends it uncompressed whatever Accept-Encoding says")
+            @RequestParam(required = false) Compression compression,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        ConversionJob job = jobService.getJob(id);
+        Path result = jobService.getResult(id);
+        StreamingResponseBody body = out -> Files.copy(result, out);
+        // Parquet compresses its own pages, a content coding would gain next to nothing
+        boolean negotiable = job.getTargetFormat() != Format.PARQUET;
+        return compressionUtil.respond(body, "file" + job.getTargetFormat().getSuffix(),
+                MediaType.parseMediaType(MediaType.MULTIPART_FORM_DATA_VALUE), compression, acceptEncoding, negotiable);
+    }
+    @DeleteMapping("/{id}")
+    @Operation(description = "Cancel a queued or running job and remove its files")
+    public ConversionJob cancel(@PathVariable String id) {
+        return jobService.cancel(id);
+    }
+}
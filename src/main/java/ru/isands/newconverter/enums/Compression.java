@@ -0,0 +1,36 @@
+package ru.isands.newconverter.enums;
+
+/**
+ * Stream compression of uploads and responses.
+ */
+public enum Compression {
+    NONE(null, "", null),
+    GZIP("gzip", ".gz", "application/gzip"),
+    ZSTD("zstd", ".zst", "application/zstd"),
+    // No HTTP content coding, only sent as a compressed file
+    BZIP2(null, ".bz2", "application/x-bzip2");
+    private final String contentCoding;
+    private final String suffix;
+    private final String mediaType;
+
+    Compression(String contentCoding, String suffix, String mediaType) {
+        this.contentCoding = contentCoding;
+        this.suffix = suffix;
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @return token of {@code Accept-Encoding} and {@code Content-Encoding}, {@code null} if there is none
+     */
+    public String getContentCoding() {
+        return contentCoding;
+    }
+
+    public String getSuffix() {
+        return suffix;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+}
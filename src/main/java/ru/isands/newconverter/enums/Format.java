@@ -8,7 +8,12 @@ public enum Format {
     PARQUET(".parquet"),
     CSV(".csv"),
     JSON(".json"),
-    XML(".xml");
+    XML(".xml"),
+    NDJSON(".ndjson"),
+    // Arrow IPC file format, readable with random access and memory mapping
+    ARROW(".arrow"),
+    // Arrow IPC streaming format, without the footer
+    ARROW_STREAM(".arrows");
     private final String suffix;
 
     Format(String suffix) {
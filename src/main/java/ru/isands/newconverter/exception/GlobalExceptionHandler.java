@@ -1,7 +1,10 @@
 package ru.isands.newconverter.exception;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BindException;
+import org.springframework.validation.FieldError;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.multipart.MaxUploadSizeExceededException;
@@ -23,6 +26,51 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
     }
     
+    @ExceptionHandler(BindException.class)
+    public ResponseEntity<Map<String, String>> handleBindException(BindException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Invalid Request Parameter");
+        FieldError fieldError = ex.getFieldError();
+        error.put("message", fieldError != null
+                ? "Invalid value '" + fieldError.getRejectedValue() + "' for parameter '" + fieldError.getField() + "'"
+                : ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(error);
+    }
+    
+    @ExceptionHandler(JobQueueFullException.class)
+    public ResponseEntity<Map<String, String>> handleJobQueueFullException(JobQueueFullException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Too Many Requests");
+        error.put("message", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(error);
+    }
+    
+    @ExceptionHandler(ServerBusyException.class)
+    public ResponseEntity<Map<String, String>> handleServerBusyException(ServerBusyException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Server Busy");
+        error.put("message", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(ex.getRetryAfter().toSeconds(), 1)))
+                .body(error);
+    }
+    
+    @ExceptionHandler(JobNotFoundException.class)
+    public ResponseEntity<Map<String, String>> handleJobNotFoundException(JobNotFoundException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Job Not Found");
+        error.put("message", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(error);
+    }
+    
+    @ExceptionHandler(JobNotFinishedException.class)
+    public ResponseEntity<Map<String, String>> handleJobNotFinishedException(JobNotFinishedException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Job Not Finished");
+        error.put("message", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(error);
+    }
+    
     @ExceptionHandler(MaxUploadSizeExceededException.class)
     public ResponseEntity<Map<String, String>> handleMaxUploadSizeExceededException(MaxUploadSizeExceededException ex) {
         Map<String, String> error = new HashMap<>();
@@ -0,0 +1,11 @@
+package ru.isands.newconverter.exception;
+
+/**
+ * Thrown when the result of a conversion job is requested before the job is done
+ */
+public class JobNotFinishedException extends RuntimeException {
+    
+    public JobNotFinishedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package ru.isands.newconverter.exception;
+
+/**
+ * Thrown when a conversion job does not exist or has already expired
+ */
+public class JobNotFoundException extends RuntimeException {
+    
+    public JobNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package ru.isands.newconverter.exception;
+
+/**
+ * Thrown when the conversion queue is full and a job cannot be accepted
+ */
+public class JobQueueFullException extends RuntimeException {
+    
+    public JobQueueFullException(String message) {
+        super(message);
+    }
+}
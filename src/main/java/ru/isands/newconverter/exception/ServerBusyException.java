@@ -0,0 +1,19 @@
+package ru.isands.newconverter.exception;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a conversion does not fit into the memory budget within the queue timeout
+ */
+public class ServerBusyException extends RuntimeException {
+    private final Duration retryAfter;
+
+    public ServerBusyException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,121 @@
+package ru.isands.newconverter.job;
+
+import ru.isands.newconverter.enums.Format;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.Future;
+
+/**
+ * State of one asynchronous conversion. Public getters are the job representation returned by the API.
+ */
+public class ConversionJob {
+    private final String id;
+    private final String fileName;
+    private final Format inputFormat;
+    private final Format targetFormat;
+    private final Path directory;
+    private final Instant createdAt = Instant.now();
+    private JobStatus status = JobStatus.QUEUED;
+    private Instant startedAt;
+    private Instant finishedAt;
+    private String error;
+    private Future<?> future;
+
+    ConversionJob(String id, String fileName, Format inputFormat, Format targetFormat, Path directory) {
+        this.id = id;
+        this.fileName = fileName;
+        this.inputFormat = inputFormat;
+        this.targetFormat = targetFormat;
+        this.directory = directory;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public Format getInputFormat() {
+        return inputFormat;
+    }
+
+    public Format getTargetFormat() {
+        return targetFormat;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public synchronized JobStatus getStatus() {
+        return status;
+    }
+
+    public synchronized Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public synchronized Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public synchronized String getError() {
+        return error;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    Path getResultFile() {
+        return directory.resolve("result" + targetFormat.getSuffix());
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * @return {@code false} if the job was cancelled while queued
+     */
+    synchronized boolean start() {
+        if (status != JobStatus.QUEUED) {
+            return false;
+        }
+        status = JobStatus.RUNNING;
+        startedAt = Instant.now();
+        return true;
+    }
+
+    /**
+     * @param error failure message, {@code null} when the result was written
+     */
+    synchronized void finish(String error) {
+        if (status != JobStatus.RUNNING) {
+            return;
+        }
+        this.status = error == null ? JobStatus.DONE : JobStatus.FAILED;
+        this.error = error;
+        this.finishedAt = Instant.now();
+    }
+
+    /**
+     * Stops a queued or running job. A running conversion is interrupted.
+     *
+     * @return {@code false} if the job had already finished
+     */
+    synchronized boolean cancel() {
+        if (status != JobStatus.QUEUED && status != JobStatus.RUNNING) {
+            return false;
+        }
+        status = JobStatus.CANCELLED;
+        finishedAt = Instant.now();
+        if (future != null) {
+            future.cancel(true);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,171 @@
+package ru.isands.newconverter.job;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import ru.isands.newconverter.enums.Format;
+import ru.isands.newconverter.exception.ConversionException;
+import ru.isands.newconverter.exception.JobNotFinishedException;
+import ru.isands.newconverter.exception.JobNotFoundException;
+import ru.isands.newconverter.exception.JobQueueFullException;
+import ru.isands.newconverter.exception.ServerBusyException;
+import ru.isands.newconverter.parquet.ParquetQuery;
+import ru.isands.newconverter.parquet.ParquetWriteOptions;
+import ru.isands.newconverter.service.ParquetConverterService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs conversions in the background on a bounded worker pool. Uploads and results are kept in
+ * {@code app.temp-dir/jobs/<id>} until the job expires.
+ */
+@Service
+public class JobService {
+    private static final Logger log = LoggerFactory.getLogger(JobService.class);
+
+    private final ParquetConverterService converterService;
+    private final Path jobsDir;
+    private final Duration ttl;
+    private final ThreadPoolExecutor executor;
+    private final Map<String, ConversionJob> jobs = new ConcurrentHashMap<>();
+
+    public JobService(ParquetConverterService converterService,
+                      @Value("${app.temp-dir}") String tempDir,
+                      @Value("${app.jobs.workers:2}") int workers,
+                      @Value("${app.jobs.queue-capacity:16}") int queueCapacity,
+                      @Value("${app.jobs.ttl:1h}") Duration ttl) {
+        this.converterService = converterService;
+        this.jobsDir = Paths.get(tempDir, "jobs");
+        this.ttl = ttl;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "conversion-job-" + threadNumber.incrementAndGet()));
+    }
+
+    /**
+     * Jobs live in memory only, files left by a previous run can never be downloaded.
+     */
+    @PostConstruct
+    void removeOrphanedFiles() throws IOException {
+        FileUtils.deleteDirectory(jobsDir.toFile());
+        Files.createDirectories(jobsDir);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public ConversionJob submit(MultipartFile file, Format inputFormat, Format targetFormat,
+                                ParquetQuery query, ParquetWriteOptions options) {
+        // Cheap check before the upload is copied, the executor has the final say
+        if (executor.getQueue().remainingCapacity() == 0) {
+            throw new JobQueueFullException("Conversion queue is full, retry later");
+        }
+        String id = UUID.randomUUID().toString();
+        Path directory = jobsDir.resolve(id);
+        ConversionJob job = new ConversionJob(id, file.getOriginalFilename(), inputFormat, targetFormat, directory);
+        StoredUpload input;
+        try {
+            Files.createDirectories(directory);
+            Path inputPath = directory.resolve("input" + inputFormat.getSuffix());
+            file.transferTo(inputPath);
+            input = new StoredUpload(inputPath, file.getOriginalFilename());
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(directory.toFile());
+            throw new ConversionException("Failed to store uploaded file: " + e.getMessage(), e);
+        }
+        jobs.put(id, job);
+        try {
+            job.setFuture(executor.submit(() -> run(job, input, query, options)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            FileUtils.deleteQuietly(directory.toFile());
+            throw new JobQueueFullException("Conversion queue is full, retry later");
+        }
+        return job;
+    }
+
+    private void run(ConversionJob job, StoredUpload input, ParquetQuery query, ParquetWriteOptions options) {
+        if (!job.start()) {
+            return;
+        }
+        try {
+            // The result file is opened first: once convert() returns, its body has to run to release the memory
+            // grant and the cache fill, even if cancel() removes the job directory meanwhile
+            try (OutputStream out = Files.newOutputStream(job.getResultFile())) {
+                converterService.convert(input, job.getInputFormat(), job.getTargetFormat(), query, options)
+                        .writeTo(out);
+            }
+            job.finish(null);
+        } catch (ConversionException | ServerBusyException e) {
+            job.finish(e.getMessage());
+        } catch (Exception e) {
+            log.warn("Conversion job {} failed", job.getId(), e);
+            job.finish("Conversion failed: " + e.getMessage());
+        } finally {
+            FileUtils.deleteQuietly(input.getPath().toFile());
+            if (job.getStatus() == JobStatus.CANCELLED) {
+                FileUtils.deleteQuietly(job.getDirectory().toFile());
+            }
+        }
+    }
+
+    public ConversionJob getJob(String id) {
+        ConversionJob job = jobs.get(id);
+        if (job == null) {
+            throw new JobNotFoundException("Job not found: " + id);
+        }
+        return job;
+    }
+
+    public Path getResult(String id) {
+        ConversionJob job = getJob(id);
+        if (job.getStatus() != JobStatus.DONE) {
+            throw new JobNotFinishedException("Job " + id + " is " + job.getStatus());
+        }
+        return job.getResultFile();
+    }
+
+    public ConversionJob cancel(String id) {
+        ConversionJob job = getJob(id);
+        if (job.cancel()) {
+            FileUtils.deleteQuietly(job.getDirectory().toFile());
+        }
+        return job;
+    }
+
+    @Scheduled(fixedDelayString = "${app.jobs.cleanup-interval:PT1M}")
+    void removeExpiredJobs() {
+        Instant expiredBefore = Instant.now().minus(ttl);
+        jobs.values().removeIf(job -> {
+            Instant finishedAt = job.getFinishedAt();
+            if (finishedAt == null || finishedAt.isAfter(expiredBefore)) {
+                return false;
+            }
+            FileUtils.deleteQuietly(job.getDirectory().toFile());
+            return true;
+        });
+    }
+}
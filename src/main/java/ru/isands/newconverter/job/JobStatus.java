@@ -0,0 +1,9 @@
+package ru.isands.newconverter.job;
+
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    DONE,
+    FAILED,
+    CANCELLED
+}
@@ -0,0 +1,177 @@
+package ru.isands.newconverter.memory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.isands.newconverter.enums.Format;
+import ru.isands.newconverter.exception.ServerBusyException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control against a global heap budget. Every conversion reserves its estimated cost before it starts;
+ * conversions that do not fit wait in arrival order, up to {@code app.memory.max-queued} of them and for at most
+ * {@code app.memory.queue-timeout}, and are rejected beyond that.
+ * <p>
+ * The estimate is {@code base-cost} plus the input size times the heap used per input byte by the reader and
+ * the writer, up to {@code max-cost}: readers and writers stream, so beyond a point the cost no longer grows with
+ * the input, the row buffers spill to disk instead. A cost above the whole budget is cut to the budget, such a
+ * conversion runs alone.
+ */
+@Component
+public class MemoryGovernor {
+    // Heap per input byte. Parquet row groups are decoded whole and expand several times, text is read as it goes
+    private static final Map<Format, Double> READ_EXPANSION = new EnumMap<>(Map.of(
+            Format.PARQUET, 4.0,
+            Format.ARROW, 1.0,
+            Format.ARROW_STREAM, 1.0,
+            Format.CSV, 0.5,
+            Format.JSON, 0.5,
+            Format.NDJSON, 0.5,
+            Format.XML, 0.5));
+    // Parquet buffers a whole row group before writing it, Arrow a record batch, text is written row by row
+    private static final Map<Format, Double> WRITE_EXPANSION = new EnumMap<>(Map.of(
+            Format.PARQUET, 1.0,
+            Format.ARROW, 0.25,
+            Format.ARROW_STREAM, 0.25,
+            Format.CSV, 0.0,
+            Format.JSON, 0.0,
+            Format.NDJSON, 0.0,
+            Format.XML, 0.0));
+
+    private final long budget;
+    private final long baseCost;
+    private final long maxCost;
+    private final Duration queueTimeout;
+    private final int maxQueued;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    // Waiting conversions in arrival order, only the head may take memory; guarded by lock
+    private final Deque<Object> queue = new ArrayDeque<>();
+    private long reserved;
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public MemoryGovernor(@Value("${app.memory.budget:0}") DataSize budget,
+                          @Value("${app.memory.base-cost:16MB}") DataSize baseCost,
+                          @Value("${app.memory.max-cost:256MB}") DataSize maxCost,
+                          @Value("${app.memory.queue-timeout:30s}") Duration queueTimeout,
+                          @Value("${app.memory.max-queued:32}") int maxQueued) {
+        this.budget = budget.toBytes() > 0 ? budget.toBytes() : Runtime.getRuntime().maxMemory() / 2;
+        this.baseCost = baseCost.toBytes();
+        this.maxCost = maxCost.toBytes();
+        this.queueTimeout = queueTimeout;
+        this.maxQueued = maxQueued;
+    }
+
+    public long estimate(long inputSize, Format inputFormat, Format targetFormat) {
+        double perByte = READ_EXPANSION.get(inputFormat) + WRITE_EXPANSION.get(targetFormat);
+        double cost = Math.min(baseCost + Math.max(inputSize, 0) * perByte, maxCost);
+        return Math.min((long) cost, budget);
+    }
+
+    /**
+     * Reserves the estimated cost of a conversion, waiting while the budget is taken by running ones.
+     *
+     * @throws ServerBusyException if the queue is full or the wait times out
+     */
+    public MemoryGrant admit(long inputSize, Format inputFormat, Format targetFormat) {
+        long cost = estimate(inputSize, inputFormat, targetFormat);
+        lock.lock();
+        try {
+            if (queue.isEmpty() && reserved + cost <= budget) {
+                return grant(cost);
+            }
+            if (queue.size() >= maxQueued) {
+                rejected.incrementAndGet();
+                throw new ServerBusyException("Too many conversions are waiting for memory, retry later", queueTimeout);
+            }
+            delayed.incrementAndGet();
+            Object ticket = new Object();
+            queue.add(ticket);
+            try {
+                long remaining = queueTimeout.toNanos();
+                while (queue.peek() != ticket || reserved + cost > budget) {
+                    if (remaining <= 0) {
+                        rejected.incrementAndGet();
+                        throw new ServerBusyException("Not enough memory for the conversion within "
+                                + queueTimeout.toSeconds() + "s, retry later", queueTimeout);
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                return grant(cost);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                rejected.incrementAndGet();
+                throw new ServerBusyException("Interrupted while waiting for memory", queueTimeout);
+            } finally {
+                queue.remove(ticket);
+                // The next conversion in line may fit now
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private MemoryGrant grant(long cost) {
+        reserved += cost;
+        admitted.incrementAndGet();
+        return new MemoryGrant(this, cost);
+    }
+
+    void release(long bytes) {
+        lock.lock();
+        try {
+            reserved -= bytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public long getReserved() {
+        lock.lock();
+        try {
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getAdmitted() {
+        return admitted.get();
+    }
+
+    /**
+     * @return conversions that had to wait before they were admitted or rejected
+     */
+    public long getDelayed() {
+        return delayed.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+}
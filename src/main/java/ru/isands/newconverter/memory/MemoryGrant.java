@@ -0,0 +1,31 @@
+package ru.isands.newconverter.memory;
+
+/**
+ * Heap reserved for one admitted conversion, returned to the {@link MemoryGovernor} on {@link #close()}.
+ * Row buffers of the conversion spill to disk rather than grow beyond it.
+ */
+public final class MemoryGrant implements AutoCloseable {
+    private final MemoryGovernor governor;
+    private final long bytes;
+    private boolean released;
+
+    MemoryGrant(MemoryGovernor governor, long bytes) {
+        this.governor = governor;
+        this.bytes = bytes;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Releases the reservation; later calls do nothing.
+     */
+    @Override
+    public synchronized void close() {
+        if (!released) {
+            released = true;
+            governor.release(bytes);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package ru.isands.newconverter.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.isands.newconverter.cache.ResultCache;
+import ru.isands.newconverter.enums.Format;
+import ru.isands.newconverter.memory.MemoryGovernor;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Micrometer meters of the converter, exposed at {@code /actuator/prometheus}. Conversions are measured per stage
+ * and tagged by source and target format, see {@link MeteredConversion}; uploads by {@link UploadMetricsFilter}.
+ * The result cache, the memory governor, the temp directory and the number of running conversions are read
+ * on every scrape.
+ */
+@Component
+public class ConversionMetrics {
+    private final MeterRegistry registry;
+    private final Path tempDir;
+    private final AtomicInteger active = new AtomicInteger();
+
+    public ConversionMetrics(MeterRegistry registry, ResultCache resultCache, MemoryGovernor memoryGovernor,
+                             @Value("${app.temp-dir}") String tempDir) {
+        this.registry = registry;
+        this.tempDir = Paths.get(tempDir);
+        Gauge.builder("converter.conversions.active", active, AtomicInteger::get)
+                .description("Conversions currently running")
+                .register(registry);
+        // Gauges hold their state weakly, the bean itself stays referenced
+        Gauge.builder("converter.temp-dir.usage", this, ConversionMetrics::getTempDirUsage)
+                .description("Bytes of files under app.temp-dir: spilled results, cached results and job files")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("converter.cache.requests", resultCache, ResultCache::getHits)
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("converter.cache.requests", resultCache, ResultCache::getMisses)
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("converter.cache.evictions", resultCache, ResultCache::getEvictions)
+                .register(registry);
+        Gauge.builder("converter.cache.entries", resultCache, ResultCache::getEntryCount)
+                .register(registry);
+        Gauge.builder("converter.cache.size", resultCache, ResultCache::getSize)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("converter.memory.budget", memoryGovernor, MemoryGovernor::getBudget)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("converter.memory.reserved", memoryGovernor, MemoryGovernor::getReserved)
+                .description("Heap reserved by admitted conversions")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("converter.memory.queued", memoryGovernor, MemoryGovernor::getQueued)
+                .description("Conversions waiting for memory")
+                .register(registry);
+        FunctionCounter.builder("converter.memory.admissions", memoryGovernor, MemoryGovernor::getAdmitted)
+                .tag("result", "admitted")
+                .register(registry);
+        FunctionCounter.builder("converter.memory.admissions", memoryGovernor, MemoryGovernor::getDelayed)
+                .tag("result", "delayed")
+                .register(registry);
+        FunctionCounter.builder("converter.memory.admissions", memoryGovernor, MemoryGovernor::getRejected)
+                .tag("result", "rejected")
+                .register(registry);
+    }
+
+    /**
+     * Starts measuring a conversion; it counts as active until {@link MeteredConversion#finish} is called.
+     */
+    public MeteredConversion start(Format source, Format target) {
+        active.incrementAndGet();
+        return new MeteredConversion(this, Tags.of("source", source.name(), "target", target.name()));
+    }
+
+    void finish(Tags tags, long nanos, boolean success, long rows, long bytesIn, long bytesOut) {
+        active.decrementAndGet();
+        Timer.builder("converter.conversions")
+                .description("Whole conversions, from reading the upload to sending the last byte")
+                .tags(tags)
+                .tag("outcome", success ? "success" : "error")
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        registry.counter("converter.rows", tags).increment(rows);
+        DistributionSummary.builder("converter.input.size")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(registry)
+                .record(bytesIn);
+        DistributionSummary.builder("converter.output.size")
+                .baseUnit("bytes")
+                .tags(tags)
+                .register(registry)
+                .record(bytesOut);
+    }
+
+    Timer stageTimer(Tags tags, Stage stage) {
+        return Timer.builder("converter.stage")
+                .description("Time spent in one stage of a conversion")
+                .tags(tags)
+                .tag("stage", stage.getTag())
+                .register(registry);
+    }
+
+    private double getTempDirUsage() {
+        if (!Files.isDirectory(tempDir)) {
+            return 0;
+        }
+        long[] size = new long[1];
+        try {
+            Files.walkFileTree(tempDir, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    size[0] += attributes.size();
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // Files come and go while conversions run
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            return Double.NaN;
+        }
+        return size[0];
+    }
+}
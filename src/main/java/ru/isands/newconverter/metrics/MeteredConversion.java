@@ -0,0 +1,157 @@
+package ru.isands.newconverter.metrics;
+
+import io.micrometer.core.instrument.Tags;
+import ru.isands.newconverter.memory.MemoryGrant;
+import ru.isands.newconverter.pipeline.RecordBatch;
+import ru.isands.newconverter.pipeline.RowSource;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measurements of one conversion, recorded by {@link ConversionMetrics} when it finishes. A conversion may move
+ * between threads, the request thread and the one streaming the response, but runs on one at a time.
+ */
+public final class MeteredConversion {
+    private final ConversionMetrics metrics;
+    private final Tags tags;
+    private final long startNanos = System.nanoTime();
+    private long readNanos;
+    private long rows;
+    private long bytesIn;
+    private long bytesOut;
+    private MemoryGrant memory;
+    private boolean finished;
+
+    MeteredConversion(ConversionMetrics metrics, Tags tags) {
+        this.metrics = metrics;
+        this.tags = tags;
+    }
+
+    public void setBytesIn(long bytesIn) {
+        this.bytesIn = bytesIn;
+    }
+
+    /**
+     * Keeps the memory reserved for the conversion until it finishes.
+     */
+    public void hold(MemoryGrant memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * @return heap the row buffers of the conversion may take before they spill, unlimited without a reservation
+     */
+    public long getMemoryShare() {
+        return memory != null ? memory.getBytes() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Counts rows and the time spent inside the source. Rows of a conversion are those of its longest pass,
+     * counted when the source is closed, as Parquet output reads the input more than once.
+     */
+    public RowSource meter(RowSource source) {
+        return new MeteredRowSource(source);
+    }
+
+    /**
+     * Counts the bytes written to {@code out}.
+     */
+    public OutputStream meter(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesOut++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytesOut += len;
+            }
+        };
+    }
+
+    public <T> T time(Stage stage, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        metrics.stageTimer(tags, stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the conversion; later calls do nothing, so error paths can call it unconditionally.
+     */
+    public void finish(boolean success) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (memory != null) {
+            memory.close();
+        }
+        record(Stage.READ, readNanos);
+        metrics.finish(tags, System.nanoTime() - startNanos, success, rows, bytesIn, bytesOut);
+    }
+
+    private class MeteredRowSource implements RowSource {
+        private final RowSource source;
+        private long rows;
+
+        MeteredRowSource(RowSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            try {
+                return source.hasNext();
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public Map<String, Object> next() {
+            long start = System.nanoTime();
+            try {
+                Map<String, Object> row = source.next();
+                rows++;
+                return row;
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int fillBatch(RecordBatch batch) {
+            // Batches are filled by the source itself, which may be faster than row by row
+            long start = System.nanoTime();
+            try {
+                int filled = source.fillBatch(batch);
+                rows += filled;
+                return filled;
+            } finally {
+                readNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public void close() {
+            MeteredConversion.this.rows = Math.max(MeteredConversion.this.rows, rows);
+            source.close();
+        }
+    }
+}
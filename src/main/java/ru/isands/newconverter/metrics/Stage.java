@@ -0,0 +1,27 @@
+package ru.isands.newconverter.metrics;
+
+/**
+ * Stages of a conversion, the {@code stage} tag of the {@code converter.stage} timer.
+ */
+public enum Stage {
+    /** Parsing the input inside the row source, summed over all passes. */
+    READ("read"),
+    /** Scanning the input to infer the Parquet schema, reading included. */
+    INFER("infer"),
+    /** Encoding and compressing Parquet, reading of that pass included. */
+    ENCODE("encode"),
+    /** Writing CSV, JSON, NDJSON or XML to the response while reading, reading included. */
+    WRITE("write"),
+    /** Sending a finished Parquet file to the client. */
+    TRANSFER("transfer");
+
+    private final String tag;
+
+    Stage(String tag) {
+        this.tag = tag;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+}
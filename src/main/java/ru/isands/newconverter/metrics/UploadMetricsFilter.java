@@ -0,0 +1,56 @@
+package ru.isands.newconverter.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the multipart upload. The container parses and stores the parts while the body arrives, so parsing them
+ * before the dispatcher does measures the transfer from the client; the dispatcher then gets the parsed parts.
+ * Uploads are not tagged by format, the request is not mapped to an endpoint yet.
+ */
+@Component
+public class UploadMetricsFilter extends OncePerRequestFilter {
+    private final Timer uploadTimer;
+    private final DistributionSummary uploadSize;
+
+    public UploadMetricsFilter(MeterRegistry registry) {
+        this.uploadTimer = Timer.builder("converter.upload")
+                .description("Receiving and storing multipart uploads")
+                .register(registry);
+        this.uploadSize = DistributionSummary.builder("converter.upload.size")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return !"POST".equals(request.getMethod()) || contentType == null || !contentType.startsWith("multipart/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        try {
+            request.getParts();
+            uploadTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (request.getContentLengthLong() >= 0) {
+                uploadSize.record(request.getContentLengthLong());
+            }
+        } catch (IOException | ServletException | IllegalStateException e) {
+            // Oversized or broken uploads fail again in the dispatcher, which reports them
+        }
+        chain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,204 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import ru.isands.newconverter.schema.ColumnType;
+import ru.isands.newconverter.schema.TypeMismatchException;
+import ru.isands.newconverter.schema.ValueScanner;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Converts values as read from the input (maps, lists, strings, numbers and booleans) to the Avro representation
+ * of an inferred schema, for the Avro writer. Values that do not fit the schema throw {@link TypeMismatchException}.
+ */
+public final class AvroValues {
+    private final ValueScanner scanner = new ValueScanner();
+
+    public Object toAvro(Object value, Schema schema) {
+        if (value == null) {
+            return null;
+        }
+        if (schema.getType() == Schema.Type.UNION) {
+            Schema branch = nonNullBranch(schema);
+            // Blank text is a missing value for anything but strings, as in top-level columns
+            if (branch.getType() != Schema.Type.STRING && value instanceof String string && string.isBlank()) {
+                return null;
+            }
+            return toAvro(value, branch);
+        }
+        LogicalType logicalType = schema.getLogicalType();
+        return switch (schema.getType()) {
+            case RECORD -> toRecord(value, schema);
+            case ARRAY -> toArray(value, schema);
+            case MAP -> toMap(value, schema);
+            case BYTES -> {
+                if (!(logicalType instanceof LogicalTypes.Decimal decimal)) {
+                    throw new TypeMismatchException();
+                }
+                yield ByteBuffer.wrap(unscaledBytes(toDecimal(value), decimal.getPrecision(), decimal.getScale()));
+            }
+            case INT -> logicalType instanceof LogicalTypes.Date
+                    ? (int) scan(value, ColumnType.DATE)
+                    : toInt(value);
+            case LONG -> {
+                if (logicalType instanceof LogicalTypes.TimestampMillis) {
+                    yield Math.floorDiv(toEpochMicros(value), 1000L);
+                }
+                yield logicalType instanceof LogicalTypes.TimestampMicros ? toEpochMicros(value) : toLong(value);
+            }
+            case DOUBLE -> value instanceof Number number ? number.doubleValue() : scanDouble(value);
+            case BOOLEAN -> value instanceof Boolean ? value : scanBoolean(value);
+            case STRING -> {
+                if (logicalType == null) {
+                    yield value.toString();
+                }
+                if (ValueScanner.classify(value.toString()) != ColumnType.UUID) {
+                    throw new TypeMismatchException();
+                }
+                yield value.toString().trim();
+            }
+            default -> throw new IllegalArgumentException("Unsupported Avro type " + schema.getType());
+        };
+    }
+
+    /**
+     * Two's complement big-endian bytes of the unscaled value at the given scale.
+     *
+     * @throws TypeMismatchException if the value needs rounding or more digits than {@code precision}
+     */
+    public static byte[] unscaledBytes(BigDecimal value, int precision, int scale) {
+        BigDecimal scaled;
+        try {
+            scaled = value.setScale(scale, RoundingMode.UNNECESSARY);
+        } catch (ArithmeticException e) {
+            throw new TypeMismatchException();
+        }
+        if (scaled.precision() > precision && scaled.signum() != 0) {
+            throw new TypeMismatchException();
+        }
+        return scaled.unscaledValue().toByteArray();
+    }
+
+    public static byte[] uuidBytes(String value) {
+        UUID uuid = UUID.fromString(value);
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    public static Schema nonNullBranch(Schema union) {
+        for (Schema branch : union.getTypes()) {
+            if (branch.getType() != Schema.Type.NULL) {
+                return branch;
+            }
+        }
+        throw new IllegalArgumentException("Union without a non-null branch: " + union);
+    }
+
+    private GenericData.Record toRecord(Object value, Schema schema) {
+        if (!(value instanceof Map<?, ?> map)) {
+            throw new TypeMismatchException();
+        }
+        for (Object key : map.keySet()) {
+            if (schema.getField(String.valueOf(key)) == null) {
+                throw new TypeMismatchException();
+            }
+        }
+        GenericData.Record record = new GenericData.Record(schema);
+        for (Schema.Field field : schema.getFields()) {
+            record.put(field.pos(), toAvro(map.get(field.name()), field.schema()));
+        }
+        return record;
+    }
+
+    private List<Object> toArray(Object value, Schema schema) {
+        if (!(value instanceof List<?> list)) {
+            throw new TypeMismatchException();
+        }
+        List<Object> array = new ArrayList<>(list.size());
+        for (Object item : list) {
+            array.add(toAvro(item, schema.getElementType()));
+        }
+        return array;
+    }
+
+    private Map<String, Object> toMap(Object value, Schema schema) {
+        if (!(value instanceof Map<?, ?> map)) {
+            throw new TypeMismatchException();
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            result.put(String.valueOf(entry.getKey()), toAvro(entry.getValue(), schema.getValueType()));
+        }
+        return result;
+    }
+
+    private BigDecimal toDecimal(Object value) {
+        if (value instanceof BigDecimal decimal) return decimal;
+        if (value instanceof BigInteger integer) return new BigDecimal(integer);
+        if (value instanceof Integer || value instanceof Long) return BigDecimal.valueOf(((Number) value).longValue());
+        return switch (scanner.scan(value.toString())) {
+            case BIT, INT, LONG, DECIMAL -> scanner.getDecimal();
+            default -> throw new TypeMismatchException();
+        };
+    }
+
+    private int toInt(Object value) {
+        long result = toLong(value);
+        if (result < Integer.MIN_VALUE || result > Integer.MAX_VALUE) {
+            throw new TypeMismatchException();
+        }
+        return (int) result;
+    }
+
+    private long toLong(Object value) {
+        if (value instanceof Integer || value instanceof Long) return ((Number) value).longValue();
+        if (value instanceof BigInteger integer && integer.bitLength() < Long.SIZE) return integer.longValue();
+        return switch (scanner.scan(value.toString())) {
+            case BIT, INT, LONG -> scanner.getLong();
+            default -> throw new TypeMismatchException();
+        };
+    }
+
+    private long toEpochMicros(Object value) {
+        return switch (scanner.scan(value.toString())) {
+            case DATE -> scanner.getLong() * 86_400_000_000L;
+            case TIMESTAMP_MILLIS, TIMESTAMP_MICROS -> scanner.getLong();
+            default -> throw new TypeMismatchException();
+        };
+    }
+
+    private long scan(Object value, ColumnType expected) {
+        if (scanner.scan(value.toString()) != expected) {
+            throw new TypeMismatchException();
+        }
+        return scanner.getLong();
+    }
+
+    private double scanDouble(Object value) {
+        if (!scanner.scan(value.toString()).isNumeric()) {
+            throw new TypeMismatchException();
+        }
+        return scanner.getDouble();
+    }
+
+    private boolean scanBoolean(Object value) {
+        return switch (scanner.scan(value.toString())) {
+            case BOOLEAN -> scanner.getBoolean();
+            case BIT -> scanner.getLong() == 1;
+            default -> throw new TypeMismatchException();
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.conf.PlainParquetConfiguration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.OutputFile;
+
+/**
+ * Builder of Parquet writers backed by {@link BatchWriteSupport}.
+ */
+public final class BatchParquetWriter {
+
+    private BatchParquetWriter() {
+    }
+
+    /**
+     * The builder starts with a plain configuration, no Hadoop file system is involved.
+     */
+    public static Builder builder(OutputFile file) {
+        return new Builder(file).withConf(new PlainParquetConfiguration());
+    }
+
+    public static class Builder extends ParquetWriter.Builder<BatchRow, Builder> {
+        private ParquetSchema schema;
+
+        private Builder(OutputFile file) {
+            super(file);
+        }
+
+        public Builder withSchema(ParquetSchema schema) {
+            this.schema = schema;
+            return this;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<BatchRow> getWriteSupport(Configuration conf) {
+            return new BatchWriteSupport(schema);
+        }
+
+        @Override
+        protected WriteSupport<BatchRow> getWriteSupport(ParquetConfiguration conf) {
+            return new BatchWriteSupport(schema);
+        }
+    }
+}
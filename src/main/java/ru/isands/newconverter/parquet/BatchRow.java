@@ -0,0 +1,25 @@
+package ru.isands.newconverter.parquet;
+
+import ru.isands.newconverter.pipeline.RecordBatch;
+
+/**
+ * Cursor over the rows of a {@link RecordBatch}. The same instance is passed to the writer for every row.
+ */
+public class BatchRow {
+    private RecordBatch batch;
+    private int row;
+
+    public BatchRow moveTo(RecordBatch batch, int row) {
+        this.batch = batch;
+        this.row = row;
+        return this;
+    }
+
+    public RecordBatch getBatch() {
+        return batch;
+    }
+
+    public int getRow() {
+        return row;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.isands.newconverter.parquet;
+
+import ru.isands.newconverter.pipeline.RecordBatch;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes batches into one Parquet file with the configured writer.
+ */
+public interface BatchSink extends Closeable {
+
+    void write(RecordBatch batch) throws IOException;
+
+    /**
+     * @return bytes written to the file so far plus the row group still buffered in memory
+     */
+    long getDataSize();
+}
@@ -0,0 +1,126 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.avro.LogicalTypes;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import ru.isands.newconverter.pipeline.ColumnVector;
+import ru.isands.newconverter.pipeline.RecordBatch;
+import ru.isands.newconverter.schema.ColumnType;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes rows of a {@link RecordBatch} through the low-level {@link RecordConsumer}:
+ * no Avro records and no per-cell schema lookups, field indexes and types are resolved once.
+ * The file gets the same Parquet schema and Avro schema metadata as the {@code AvroParquetWriter} path.
+ */
+public class BatchWriteSupport extends WriteSupport<BatchRow> {
+    static final String AVRO_SCHEMA_KEY = "parquet.avro.schema";
+
+    private final MessageType messageType;
+    private final String[] names;
+    private final ColumnType[] types;
+    private final Map<String, String> extraMetadata = new HashMap<>();
+    private RecordConsumer recordConsumer;
+    private RecordBatch currentBatch;
+    private final Binary[][] dictionaries;
+    private final LogicalTypes.Decimal[] decimals;
+
+    /**
+     * @param schema schema without nested columns
+     */
+    public BatchWriteSupport(ParquetSchema schema) {
+        this.names = schema.getNames();
+        this.types = schema.getTypes();
+        this.messageType = schema.getMessageType();
+        this.dictionaries = new Binary[names.length][];
+        this.decimals = new LogicalTypes.Decimal[names.length];
+        for (int column = 0; column < names.length; column++) {
+            if (types[column] == ColumnType.NESTED) {
+                throw new IllegalArgumentException("Nested column '" + names[column] + "' needs the Avro writer");
+            }
+            if (types[column] == ColumnType.DECIMAL) {
+                decimals[column] = (LogicalTypes.Decimal) schema.getColumnSchema(column).getLogicalType();
+            }
+        }
+        extraMetadata.put(AVRO_SCHEMA_KEY, schema.getAvroSchemaJson());
+    }
+
+    @Override
+    public WriteContext init(Configuration configuration) {
+        return new WriteContext(messageType, extraMetadata);
+    }
+
+    @Override
+    public WriteContext init(ParquetConfiguration configuration) {
+        return new WriteContext(messageType, extraMetadata);
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+        this.recordConsumer = recordConsumer;
+    }
+
+    @Override
+    public void write(BatchRow batchRow) {
+        RecordBatch batch = batchRow.getBatch();
+        int row = batchRow.getRow();
+        if (batch != currentBatch || row == 0) {
+            // A new batch comes with new string dictionaries
+            currentBatch = batch;
+            Arrays.fill(dictionaries, null);
+        }
+        recordConsumer.startMessage();
+        for (int column = 0; column < names.length; column++) {
+            ColumnVector vector = batch.getColumn(column);
+            if (vector.isNull(row)) {
+                continue;
+            }
+            recordConsumer.startField(names[column], column);
+            switch (types[column]) {
+                case BIT, INT -> recordConsumer.addInteger(((ColumnVector.IntVector) vector).getInt(row));
+                case LONG -> recordConsumer.addLong(((ColumnVector.LongVector) vector).getLong(row));
+                case DOUBLE -> recordConsumer.addDouble(((ColumnVector.DoubleVector) vector).getDouble(row));
+                case BOOLEAN -> recordConsumer.addBoolean(((ColumnVector.BooleanVector) vector).getBoolean(row));
+                case DATE -> recordConsumer.addInteger(((ColumnVector.DateVector) vector).getInt(row));
+                case TIMESTAMP_MILLIS, TIMESTAMP_MICROS ->
+                        recordConsumer.addLong(((ColumnVector.TimestampVector) vector).getLong(row));
+                case DECIMAL -> recordConsumer.addBinary(Binary.fromConstantByteArray(AvroValues.unscaledBytes(
+                        ((ColumnVector.DecimalVector) vector).getDecimal(row),
+                        decimals[column].getPrecision(), decimals[column].getScale())));
+                case EMPTY, UUID, STRING -> recordConsumer.addBinary(toBinary(column, (ColumnVector.StringVector) vector, row));
+                case NESTED -> throw new IllegalStateException();
+            }
+            recordConsumer.endField(names[column], column);
+        }
+        recordConsumer.endMessage();
+    }
+
+    /**
+     * Encodes each distinct string of the batch to UTF-8, or a UUID to its 16 bytes, once.
+     */
+    private Binary toBinary(int column, ColumnVector.StringVector vector, int row) {
+        Binary[] dictionary = dictionaries[column];
+        if (dictionary == null || dictionary.length < vector.getDictionarySize()) {
+            dictionary = dictionary == null
+                    ? new Binary[Math.max(16, vector.getDictionarySize())]
+                    : Arrays.copyOf(dictionary, Math.max(dictionary.length * 2, vector.getDictionarySize()));
+            dictionaries[column] = dictionary;
+        }
+        int code = vector.getCode(row);
+        Binary binary = dictionary[code];
+        if (binary == null) {
+            binary = types[column] == ColumnType.UUID
+                    ? Binary.fromConstantByteArray(AvroValues.uuidBytes(vector.getEntry(code)))
+                    : Binary.fromString(vector.getEntry(code));
+            dictionary[code] = binary;
+        }
+        return binary;
+    }
+}
@@ -0,0 +1,129 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.LocalInputFile;
+import org.apache.parquet.io.SeekableInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Parquet {@link InputFile} over a byte buffer, either a local file mapped into memory or bytes already
+ * on the heap: reads are plain buffer copies, seeks are free.
+ */
+public class BufferInputFile implements InputFile {
+    private final String name;
+    private final ByteBuffer buffer;
+
+    private BufferInputFile(String name, ByteBuffer buffer) {
+        this.name = name;
+        this.buffer = buffer;
+    }
+
+    public static InputFile wrap(String name, byte[] data) {
+        return new BufferInputFile(name, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Maps a local file into memory. Files that do not fit into a single mapping are read through
+     * {@link LocalInputFile}.
+     */
+    public static InputFile map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return new LocalInputFile(path);
+            }
+            return new BufferInputFile(path.toString(), channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    @Override
+    public long getLength() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public SeekableInputStream newStream() {
+        return new BufferInputStream(buffer.duplicate());
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static class BufferInputStream extends SeekableInputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long getPos() {
+            return buffer.position();
+        }
+
+        @Override
+        public void seek(long newPos) throws IOException {
+            if (newPos > buffer.limit()) {
+                throw new EOFException("Seek past the end of the file: " + newPos);
+            }
+            buffer.position((int) newPos);
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return length == 0 ? 0 : -1;
+            }
+            int read = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, read);
+            return read;
+        }
+
+        @Override
+        public void readFully(byte[] bytes) throws IOException {
+            readFully(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void readFully(byte[] bytes, int offset, int length) throws IOException {
+            if (length > buffer.remaining()) {
+                throw new EOFException("Reached the end of the file with " + length + " bytes left to read");
+            }
+            buffer.get(bytes, offset, length);
+        }
+
+        @Override
+        public int read(ByteBuffer target) {
+            if (!buffer.hasRemaining()) {
+                return target.hasRemaining() ? -1 : 0;
+            }
+            int read = Math.min(target.remaining(), buffer.remaining());
+            ByteBuffer slice = buffer.slice();
+            slice.limit(read);
+            target.put(slice);
+            buffer.position(buffer.position() + read);
+            return read;
+        }
+
+        @Override
+        public void readFully(ByteBuffer target) throws IOException {
+            if (target.remaining() > buffer.remaining()) {
+                throw new EOFException("Reached the end of the file with " + target.remaining() + " bytes left to read");
+            }
+            read(target);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package ru.isands.newconverter.parquet;
+
+import org.springframework.util.unit.DataSize;
+import ru.isands.newconverter.exception.ConversionException;
+
+import java.util.List;
+
+/**
+ * How a Parquet dataset is split into files: Hive-style partition directories by column values, and a new file
+ * once a file reaches a row count or size. {@code null} means "not split that way". The size is checked after
+ * every batch of {@code app.batch-size} rows, so a file may exceed it by up to one batch.
+ */
+public class DatasetLayout {
+    private List<String> partitionBy;
+    private Long maxFileRows;
+    private DataSize maxFileSize;
+
+    public void validate() {
+        if (partitionBy != null && partitionBy.stream().distinct().count() != partitionBy.size()) {
+            throw new ConversionException("Partition columns must not repeat");
+        }
+        if (maxFileRows != null && maxFileRows <= 0) {
+            throw new ConversionException("Max file rows must be positive");
+        }
+        if (maxFileSize != null && maxFileSize.toBytes() <= 0) {
+            throw new ConversionException("Max file size must be positive");
+        }
+    }
+
+    public List<String> getPartitionBy() {
+        return partitionBy != null ? partitionBy : List.of();
+    }
+
+    public void setPartitionBy(List<String> partitionBy) {
+        this.partitionBy = partitionBy;
+    }
+
+    public Long getMaxFileRows() {
+        return maxFileRows;
+    }
+
+    public void setMaxFileRows(Long maxFileRows) {
+        this.maxFileRows = maxFileRows;
+    }
+
+    public DataSize getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    public void setMaxFileSize(DataSize maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    @Override
+    public String toString() {
+        return "DatasetLayout{partitionBy=" + partitionBy + ", maxFileRows=" + maxFileRows
+                + ", maxFileSize=" + maxFileSize + "}";
+    }
+}
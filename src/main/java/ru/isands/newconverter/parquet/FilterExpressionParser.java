@@ -0,0 +1,385 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+import ru.isands.newconverter.exception.ConversionException;
+import ru.isands.newconverter.schema.ValueScanner;
+
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Turns a filter expression into a parquet-mr {@link FilterPredicate}, so row groups, pages
+ * and records can be skipped using statistics, dictionaries and column indexes.
+ * <pre>
+ * expression := or
+ * or         := and ("or" and)*
+ * and        := unary ("and" unary)*
+ * unary      := "not" unary | "(" expression ")" | condition
+ * condition  := column ("=" | "!=" | "&lt;&gt;" | "&lt;" | "&lt;=" | "&gt;" | "&gt;=") literal
+ *             | column "is" ["not"] "null"
+ *             | column ["not"] "in" "(" literal ("," literal)* ")"
+ * literal    := number | 'string' | true | false | null
+ *               dates, timestamps and UUIDs are written as strings: '2024-01-31', '2024-01-31T10:00:00Z'
+ * column     := name | `quoted name`, dots address nested fields
+ * </pre>
+ */
+public class FilterExpressionParser {
+    private final MessageType schema;
+    private final List<String> tokens;
+    private final Set<String> columns = new LinkedHashSet<>();
+    private int position;
+
+    private FilterExpressionParser(MessageType schema, String expression) {
+        this.schema = schema;
+        this.tokens = tokenize(expression);
+    }
+
+    /**
+     * @param schema file schema used to resolve column types
+     */
+    public static FilterExpressionParser parse(MessageType schema, String expression) {
+        return new FilterExpressionParser(schema, expression);
+    }
+
+    public FilterPredicate toPredicate() {
+        position = 0;
+        FilterPredicate predicate = parseOr();
+        if (position < tokens.size()) {
+            throw error("unexpected '" + tokens.get(position) + "'");
+        }
+        return predicate;
+    }
+
+    /**
+     * @return top-level columns referenced by the expression, valid after {@link #toPredicate()}
+     */
+    public Set<String> getColumns() {
+        return columns;
+    }
+
+    private FilterPredicate parseOr() {
+        FilterPredicate left = parseAnd();
+        while (acceptKeyword("or")) {
+            left = FilterApi.or(left, parseAnd());
+        }
+        return left;
+    }
+
+    private FilterPredicate parseAnd() {
+        FilterPredicate left = parseUnary();
+        while (acceptKeyword("and")) {
+            left = FilterApi.and(left, parseUnary());
+        }
+        return left;
+    }
+
+    private FilterPredicate parseUnary() {
+        if (acceptKeyword("not")) {
+            return FilterApi.not(parseUnary());
+        }
+        if (accept("(")) {
+            FilterPredicate inner = parseOr();
+            expect(")");
+            return inner;
+        }
+        return parseCondition();
+    }
+
+    private FilterPredicate parseCondition() {
+        String column = parseColumn();
+        if (acceptKeyword("is")) {
+            boolean negated = acceptKeyword("not");
+            expectKeyword("null");
+            return compare(column, negated ? "!=" : "=", null);
+        }
+        boolean negatedIn = acceptKeyword("not");
+        if (acceptKeyword("in")) {
+            expect("(");
+            List<String> values = new ArrayList<>();
+            do {
+                values.add(next());
+            } while (accept(","));
+            expect(")");
+            return in(column, values, negatedIn);
+        }
+        if (negatedIn) {
+            throw error("expected 'in' after 'not'");
+        }
+        String operator = next();
+        if (!Set.of("=", "!=", "<>", "<", "<=", ">", ">=").contains(operator)) {
+            throw error("unknown operator '" + operator + "'");
+        }
+        return compare(column, operator.equals("<>") ? "!=" : operator, literal(next()));
+    }
+
+    private String parseColumn() {
+        String token = next();
+        String column = token.startsWith("`") ? token.substring(1, token.length() - 1).replace("``", "`") : token;
+        if (!schema.containsPath(column.split("\\."))) {
+            throw error("unknown column '" + column + "'");
+        }
+        Type type = schema.getType(column.split("\\."));
+        if (!type.isPrimitive()) {
+            throw error("column '" + column + "' is not a primitive column");
+        }
+        columns.add(column.split("\\.")[0]);
+        return column;
+    }
+
+    private FilterPredicate compare(String column, String operator, String literal) {
+        PrimitiveType type = schema.getType(column.split("\\.")).asPrimitiveType();
+        return switch (type.getPrimitiveTypeName()) {
+            case INT32 -> compare(FilterApi.intColumn(column), operator, convert(literal, column, intParser(type)));
+            case INT64 -> compare(FilterApi.longColumn(column), operator, convert(literal, column, longParser(type)));
+            case FLOAT -> compare(FilterApi.floatColumn(column), operator, convert(literal, column, Float::valueOf));
+            case DOUBLE -> compare(FilterApi.doubleColumn(column), operator, convert(literal, column, Double::valueOf));
+            case BINARY -> compare(FilterApi.binaryColumn(column), operator, literal == null ? null : Binary.fromString(literal));
+            case FIXED_LEN_BYTE_ARRAY -> {
+                Binary value = convert(literal, column, uuidParser(type, column));
+                if (operator.equals("=")) yield FilterApi.eq(FilterApi.binaryColumn(column), value);
+                if (operator.equals("!=")) yield FilterApi.notEq(FilterApi.binaryColumn(column), value);
+                throw error("UUID column '" + column + "' supports only = and !=");
+            }
+            case BOOLEAN -> {
+                Boolean value = literal == null ? null : toBoolean(literal, column);
+                if (operator.equals("=")) yield FilterApi.eq(FilterApi.booleanColumn(column), value);
+                if (operator.equals("!=")) yield FilterApi.notEq(FilterApi.booleanColumn(column), value);
+                throw error("boolean column '" + column + "' supports only = and !=");
+            }
+            default -> throw error("filtering on " + type.getPrimitiveTypeName() + " column '" + column + "' is not supported");
+        };
+    }
+
+    private static <T extends Comparable<T>, C extends Operators.Column<T> & Operators.SupportsLtGt> FilterPredicate compare(
+            C column, String operator, T value) {
+        if (value == null && !operator.equals("=") && !operator.equals("!=")) {
+            throw new ConversionException("Invalid filter expression: null can only be compared with = and !=");
+        }
+        return switch (operator) {
+            case "=" -> FilterApi.eq(column, value);
+            case "!=" -> FilterApi.notEq(column, value);
+            case "<" -> FilterApi.lt(column, value);
+            case "<=" -> FilterApi.ltEq(column, value);
+            case ">" -> FilterApi.gt(column, value);
+            default -> FilterApi.gtEq(column, value);
+        };
+    }
+
+    private FilterPredicate in(String column, List<String> tokens, boolean negated) {
+        PrimitiveType type = schema.getType(column.split("\\.")).asPrimitiveType();
+        return switch (type.getPrimitiveTypeName()) {
+            case INT32 -> in(FilterApi.intColumn(column), values(tokens, column, intParser(type)), negated);
+            case INT64 -> in(FilterApi.longColumn(column), values(tokens, column, longParser(type)), negated);
+            case FLOAT -> in(FilterApi.floatColumn(column), values(tokens, column, Float::valueOf), negated);
+            case DOUBLE -> in(FilterApi.doubleColumn(column), values(tokens, column, Double::valueOf), negated);
+            case BINARY -> in(FilterApi.binaryColumn(column), values(tokens, column, Binary::fromString), negated);
+            case FIXED_LEN_BYTE_ARRAY -> in(FilterApi.binaryColumn(column), values(tokens, column, uuidParser(type, column)), negated);
+            case BOOLEAN -> in(FilterApi.booleanColumn(column), values(tokens, column, value -> toBoolean(value, column)), negated);
+            default -> throw error("filtering on " + type.getPrimitiveTypeName() + " column '" + column + "' is not supported");
+        };
+    }
+
+    private static <T extends Comparable<T>, C extends Operators.Column<T> & Operators.SupportsEqNotEq> FilterPredicate in(
+            C column, Set<T> values, boolean negated) {
+        return negated ? FilterApi.notIn(column, values) : FilterApi.in(column, values);
+    }
+
+    private <T> Set<T> values(List<String> tokens, String column, Function<String, T> parser) {
+        Set<T> values = new HashSet<>();
+        for (String token : tokens) {
+            String literal = literal(token);
+            if (literal == null) {
+                throw error("null is not allowed in 'in', use 'is null'");
+            }
+            values.add(convert(literal, column, parser));
+        }
+        return values;
+    }
+
+    /**
+     * Date columns take ISO dates, other INT32 columns take numbers.
+     */
+    private static Function<String, Integer> intParser(PrimitiveType type) {
+        if (type.getLogicalTypeAnnotation() instanceof LogicalTypeAnnotation.DateLogicalTypeAnnotation) {
+            return literal -> (int) scanTemporal(literal, ChronoUnit.DAYS);
+        }
+        return Integer::valueOf;
+    }
+
+    /**
+     * Timestamp columns take ISO dates and timestamps in their unit, other INT64 columns take numbers.
+     */
+    private static Function<String, Long> longParser(PrimitiveType type) {
+        if (type.getLogicalTypeAnnotation() instanceof LogicalTypeAnnotation.TimestampLogicalTypeAnnotation timestamp) {
+            ChronoUnit unit = switch (timestamp.getUnit()) {
+                case MILLIS -> ChronoUnit.MILLIS;
+                case MICROS -> ChronoUnit.MICROS;
+                case NANOS -> ChronoUnit.NANOS;
+            };
+            return literal -> scanTemporal(literal, unit);
+        }
+        return Long::valueOf;
+    }
+
+    private static Function<String, Binary> uuidParser(PrimitiveType type, String column) {
+        if (!(type.getLogicalTypeAnnotation() instanceof LogicalTypeAnnotation.UUIDLogicalTypeAnnotation)) {
+            throw error("filtering on FIXED_LEN_BYTE_ARRAY column '" + column + "' is not supported");
+        }
+        return literal -> Binary.fromConstantByteArray(AvroValues.uuidBytes(literal.trim()));
+    }
+
+    /**
+     * @return the date or timestamp since the epoch in {@code unit}, rounded down
+     * @throws IllegalArgumentException if the literal is not a date or a timestamp
+     */
+    private static long scanTemporal(String literal, ChronoUnit unit) {
+        ValueScanner scanner = new ValueScanner();
+        long micros = switch (scanner.scan(literal)) {
+            case DATE -> Math.multiplyExact(scanner.getLong(), 86_400_000_000L);
+            case TIMESTAMP_MILLIS, TIMESTAMP_MICROS -> scanner.getLong();
+            default -> throw new IllegalArgumentException(literal);
+        };
+        return switch (unit) {
+            case DAYS -> Math.floorDiv(micros, 86_400_000_000L);
+            case MILLIS -> Math.floorDiv(micros, 1000L);
+            case NANOS -> Math.multiplyExact(micros, 1000L);
+            default -> micros;
+        };
+    }
+
+    private <T> T convert(String literal, String column, Function<String, T> parser) {
+        if (literal == null) {
+            return null;
+        }
+        try {
+            return parser.apply(literal);
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw error("'" + literal + "' is not a valid value for column '" + column + "'");
+        }
+    }
+
+    private boolean toBoolean(String literal, String column) {
+        if (literal.equalsIgnoreCase("true")) return true;
+        if (literal.equalsIgnoreCase("false")) return false;
+        throw error("'" + literal + "' is not a valid value for boolean column '" + column + "'");
+    }
+
+    /**
+     * @return literal text without quotes, {@code null} for the null keyword
+     */
+    private String literal(String token) {
+        if (token.startsWith("'")) {
+            return token.substring(1, token.length() - 1).replace("''", "'");
+        }
+        if (token.equalsIgnoreCase("null")) {
+            return null;
+        }
+        if (token.equals("(") || token.equals(")") || token.equals(",")) {
+            throw error("expected a value but found '" + token + "'");
+        }
+        return token;
+    }
+
+    private boolean accept(String token) {
+        if (position < tokens.size() && tokens.get(position).equals(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (position < tokens.size() && tokens.get(position).toLowerCase(Locale.ROOT).equals(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw error("expected '" + token + "'");
+        }
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw error("expected '" + keyword + "'");
+        }
+    }
+
+    private String next() {
+        if (position >= tokens.size()) {
+            throw error("unexpected end of expression");
+        }
+        return tokens.get(position++);
+    }
+
+    private static ConversionException error(String message) {
+        return new ConversionException("Invalid filter expression: " + message);
+    }
+
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '\'' || c == '`') {
+                // Quoted string or column name, the quote is escaped by doubling it
+                int end = i + 1;
+                while (true) {
+                    if (end >= expression.length()) {
+                        throw error("unterminated " + (c == '\'' ? "string" : "column name"));
+                    }
+                    if (expression.charAt(end) == c) {
+                        if (end + 1 < expression.length() && expression.charAt(end + 1) == c) {
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                tokens.add(expression.substring(i, end + 1));
+                i = end + 1;
+            } else if ("(),".indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if ("=!<>".indexOf(c) >= 0) {
+                int end = i + 1;
+                if (end < expression.length() && "=>".indexOf(expression.charAt(end)) >= 0) {
+                    end++;
+                }
+                tokens.add(expression.substring(i, end));
+                i = end;
+            } else {
+                int end = i;
+                while (end < expression.length() && !Character.isWhitespace(expression.charAt(end))
+                        && "(),=!<>'`".indexOf(expression.charAt(end)) < 0) {
+                    end++;
+                }
+                tokens.add(expression.substring(i, end));
+                i = end;
+            }
+        }
+        if (tokens.isEmpty()) {
+            throw error("expression is empty");
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,139 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Parquet {@link InputFile} reading the stored multipart part directly, without copying it to a temp file.
+ * Forward seeks skip within the open stream, backward seeks reopen the part.
+ * Skipping in a disk-backed or in-memory part does not read the skipped bytes.
+ */
+public class MultipartInputFile implements InputFile {
+    private final MultipartFile file;
+
+    public MultipartInputFile(MultipartFile file) {
+        this.file = file;
+    }
+
+    @Override
+    public long getLength() {
+        return file.getSize();
+    }
+
+    @Override
+    public SeekableInputStream newStream() throws IOException {
+        return new PartInputStream();
+    }
+
+    @Override
+    public String toString() {
+        return file.getOriginalFilename();
+    }
+
+    private class PartInputStream extends SeekableInputStream {
+        private InputStream stream;
+        private long pos;
+
+        PartInputStream() throws IOException {
+            this.stream = file.getInputStream();
+        }
+
+        @Override
+        public long getPos() {
+            return pos;
+        }
+
+        @Override
+        public void seek(long newPos) throws IOException {
+            if (newPos < pos) {
+                stream.close();
+                stream = file.getInputStream();
+                pos = 0;
+            }
+            long remaining = newPos - pos;
+            while (remaining > 0) {
+                long skipped = stream.skip(remaining);
+                if (skipped <= 0) {
+                    if (stream.read() < 0) {
+                        throw new EOFException("Seek past the end of the file: " + newPos);
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+            pos = newPos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = stream.read();
+            if (value >= 0) {
+                pos++;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = stream.read(bytes, offset, length);
+            if (read > 0) {
+                pos += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void readFully(byte[] bytes) throws IOException {
+            readFully(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public void readFully(byte[] bytes, int offset, int length) throws IOException {
+            while (length > 0) {
+                int read = read(bytes, offset, length);
+                if (read < 0) {
+                    throw new EOFException("Reached the end of the file with " + length + " bytes left to read");
+                }
+                offset += read;
+                length -= read;
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            if (buffer.hasArray()) {
+                int read = read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if (read > 0) {
+                    buffer.position(buffer.position() + read);
+                }
+                return read;
+            }
+            byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+            int read = read(chunk, 0, chunk.length);
+            if (read > 0) {
+                buffer.put(chunk, 0, read);
+            }
+            return read;
+        }
+
+        @Override
+        public void readFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (read(buffer) < 0) {
+                    throw new EOFException("Reached the end of the file with " + buffer.remaining() + " bytes left to read");
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.parquet.column.ParquetProperties;
+
+/**
+ * Parquet data page format.
+ */
+public enum PageVersion {
+    V1(ParquetProperties.WriterVersion.PARQUET_1_0),
+    V2(ParquetProperties.WriterVersion.PARQUET_2_0);
+
+    private final ParquetProperties.WriterVersion writerVersion;
+
+    PageVersion(ParquetProperties.WriterVersion writerVersion) {
+        this.writerVersion = writerVersion;
+    }
+
+    public ParquetProperties.WriterVersion getWriterVersion() {
+        return writerVersion;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.isands.newconverter.parquet;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Files of a written dataset, sent as a ZIP archive with {@value #MANIFEST_NAME} listing every file, its partition
+ * values and row count. Closing it deletes the files, so a finished dataset is held only until it has been sent.
+ */
+public class ParquetDataset implements AutoCloseable {
+    public static final String MANIFEST_NAME = "_manifest.json";
+    private static final ObjectMapper manifestMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final List<String> partitionBy;
+    private final List<DatasetFile> files;
+
+    ParquetDataset(List<String> partitionBy, List<DatasetFile> files) {
+        this.partitionBy = List.copyOf(partitionBy);
+        this.files = files.stream().sorted(Comparator.comparing(DatasetFile::path)).toList();
+    }
+
+    public List<DatasetFile> getFiles() {
+        return files;
+    }
+
+    public long getRowCount() {
+        return files.stream().mapToLong(DatasetFile::rows).sum();
+    }
+
+    /**
+     * Writes the manifest followed by the files at their dataset paths.
+     */
+    public void transferTo(OutputStream out) throws IOException {
+        try (ZipOutputStream archive = new ZipOutputStream(out)) {
+            // Parquet pages are compressed already, deflating them again costs time for nothing
+            archive.setLevel(Deflater.NO_COMPRESSION);
+            archive.putNextEntry(new ZipEntry(MANIFEST_NAME));
+            manifestMapper.writeValue(CloseShieldOutputStream.wrap(archive),
+                    new Manifest(partitionBy, getRowCount(), files));
+            archive.closeEntry();
+            for (DatasetFile file : files) {
+                archive.putNextEntry(new ZipEntry(file.path()));
+                file.content().transferTo(archive);
+                archive.closeEntry();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (DatasetFile file : files) {
+            file.content().close();
+        }
+    }
+
+    /**
+     * @param path      path inside the dataset, {@code column=value/} directories followed by the file name
+     * @param partition partition column values of the file, {@code null} for nulls and empty strings
+     */
+    public record DatasetFile(String path, Map<String, String> partition, long rows, long size,
+                              @JsonIgnore SpillOutputFile content) {
+    }
+
+    private record Manifest(List<String> partitionBy, long rows, List<DatasetFile> files) {
+    }
+}
@@ -0,0 +1,266 @@
+package ru.isands.newconverter.parquet;
+
+import ru.isands.newconverter.exception.ConversionException;
+import ru.isands.newconverter.pipeline.RecordBatch;
+import ru.isands.newconverter.schema.ColumnType;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Splits rows into a Hive-style partitioned dataset: every distinct combination of partition column values gets
+ * a {@code column=value/} directory, the files in it do not repeat those columns. A file is finished once it holds
+ * {@code maxFileRows} rows or {@code maxFileSize} bytes and its partition continues in the next one.
+ * <p>
+ * Each partition seen recently has its own open writer, which buffers a row group in memory. Beyond
+ * {@code maxOpenWriters} the least recently used writer is finished, and while the buffered row groups exceed
+ * {@code memoryBudget} the largest one is; rows arriving later for that partition go to a new file.
+ */
+public class ParquetDatasetWriter {
+    static final String DEFAULT_PARTITION = "__HIVE_DEFAULT_PARTITION__";
+
+    private final ParquetSchema fileSchema;
+    private final List<String> partitionBy;
+    // Positions of the partition columns and of the file columns in the batches passed to write
+    private final int[] partitionColumns;
+    private final ColumnType[] partitionTypes;
+    private final String[] directoryPrefixes;
+    private final int[] fileColumns;
+    private final long maxFileRows;
+    private final long maxFileSize;
+    private final int batchSize;
+    private final Supplier<SpillOutputFile> newFile;
+    private final SinkFactory sinkFactory;
+    private final int maxOpenWriters;
+    private final long memoryBudget;
+    private final int maxFiles;
+    // Access-ordered, the eldest entry is the least recently used partition
+    private final LinkedHashMap<String, OpenFile> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Integer> fileCounts = new HashMap<>();
+    private final List<ParquetDataset.DatasetFile> finished = new ArrayList<>();
+    private final StringBuilder directory = new StringBuilder();
+
+    @FunctionalInterface
+    public interface SinkFactory {
+        BatchSink open(SpillOutputFile file, ParquetSchema schema) throws IOException;
+    }
+
+    /**
+     * @param schema     schema of the batches passed to {@link #write(RecordBatch)}, with every partition column
+     * @param fileSchema schema of the files, without the partition columns
+     * @param newFile    creates the file a part is written to
+     */
+    public ParquetDatasetWriter(ParquetSchema schema, ParquetSchema fileSchema, DatasetLayout layout, int batchSize,
+                                Supplier<SpillOutputFile> newFile, SinkFactory sinkFactory,
+                                int maxOpenWriters, long memoryBudget, int maxFiles) {
+        this.fileSchema = fileSchema;
+        this.partitionBy = layout.getPartitionBy();
+        List<String> columns = List.copyOf(schema.getColumnTypes().keySet());
+        this.partitionColumns = partitionBy.stream().mapToInt(columns::indexOf).toArray();
+        this.partitionTypes = partitionBy.stream().map(schema.getColumnTypes()::get).toArray(ColumnType[]::new);
+        this.directoryPrefixes = partitionBy.stream().map(column -> escapePathName(column) + "=").toArray(String[]::new);
+        this.fileColumns = fileSchema.getColumnTypes().keySet().stream().mapToInt(columns::indexOf).toArray();
+        this.maxFileRows = layout.getMaxFileRows() != null ? layout.getMaxFileRows() : Long.MAX_VALUE;
+        this.maxFileSize = layout.getMaxFileSize() != null ? layout.getMaxFileSize().toBytes() : Long.MAX_VALUE;
+        this.batchSize = batchSize;
+        this.newFile = newFile;
+        this.sinkFactory = sinkFactory;
+        this.maxOpenWriters = maxOpenWriters;
+        this.memoryBudget = memoryBudget;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * Routes every row of {@code batch} to the file of its partition.
+     */
+    public void write(RecordBatch batch) throws IOException {
+        for (int row = 0; row < batch.size(); row++) {
+            directory.setLength(0);
+            for (int column = 0; column < partitionColumns.length; column++) {
+                directory.append(directoryPrefixes[column])
+                        .append(escapePathName(partitionValue(batch, row, column))).append('/');
+            }
+            OpenFile file = openFiles.get(directory.toString());
+            if (file == null) {
+                file = open(directory.toString(), batch, row);
+            }
+            file.batch.appendRow(batch, row, fileColumns);
+            if (file.batch.isFull() || file.rows + file.batch.size() >= maxFileRows) {
+                flush(file);
+            }
+        }
+    }
+
+    /**
+     * Finishes every open file; the caller owns the returned dataset.
+     */
+    public ParquetDataset finish() throws IOException {
+        for (Iterator<OpenFile> files = openFiles.values().iterator(); files.hasNext(); ) {
+            OpenFile file = files.next();
+            files.remove();
+            finish(file);
+        }
+        return new ParquetDataset(partitionBy, finished);
+    }
+
+    /**
+     * Deletes everything written so far, after a failure.
+     */
+    public void abort() {
+        for (OpenFile file : openFiles.values()) {
+            try {
+                file.sink.close();
+            } catch (IOException | RuntimeException ignored) {
+                // the file is deleted below either way
+            }
+            file.content.close();
+        }
+        openFiles.clear();
+        new ParquetDataset(partitionBy, finished).close();
+        finished.clear();
+    }
+
+    /**
+     * Partition value in the text form the other writers use; nulls and empty strings are the default partition.
+     */
+    private String partitionValue(RecordBatch batch, int row, int column) {
+        Object value = batch.getColumn(partitionColumns[column]).get(row);
+        if (value == null) {
+            return null;
+        }
+        return switch (partitionTypes[column]) {
+            case DATE -> LocalDate.ofEpochDay((Integer) value).toString();
+            case TIMESTAMP_MILLIS -> Instant.ofEpochMilli((Long) value).toString();
+            case TIMESTAMP_MICROS -> Instant.EPOCH.plus((Long) value, ChronoUnit.MICROS).toString();
+            case DECIMAL -> ((BigDecimal) value).toPlainString();
+            default -> value.toString();
+        };
+    }
+
+    private OpenFile open(String directory, RecordBatch batch, int row) throws IOException {
+        if (openFiles.size() >= maxOpenWriters) {
+            Iterator<OpenFile> eldest = openFiles.values().iterator();
+            OpenFile file = eldest.next();
+            eldest.remove();
+            finish(file);
+        }
+        int number = fileCounts.merge(directory, 1, Integer::sum) - 1;
+        if (finished.size() + openFiles.size() >= maxFiles) {
+            throw new ConversionException("Dataset would have more than " + maxFiles + " files");
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int column = 0; column < partitionTypes.length; column++) {
+            values.put(partitionBy.get(column), partitionValue(batch, row, column));
+        }
+        SpillOutputFile content = newFile.get();
+        BatchSink sink;
+        try {
+            sink = sinkFactory.open(content, fileSchema);
+        } catch (IOException | RuntimeException e) {
+            content.close();
+            throw e;
+        }
+        String path = directory + String.format("part-%05d.parquet", number);
+        OpenFile file = new OpenFile(directory, path, Collections.unmodifiableMap(values), content, sink,
+                new RecordBatch(fileSchema.getColumnTypes(), batchSize, false));
+        openFiles.put(directory, file);
+        return file;
+    }
+
+    private void flush(OpenFile file) throws IOException {
+        file.sink.write(file.batch);
+        file.rows += file.batch.size();
+        file.batch.reset();
+        if (file.rows >= maxFileRows || file.sink.getDataSize() >= maxFileSize) {
+            openFiles.remove(file.directory);
+            finish(file);
+        }
+        while (!openFiles.isEmpty() && getBufferedSize() > memoryBudget) {
+            OpenFile largest = Collections.max(openFiles.values(),
+                    (left, right) -> Long.compare(left.getBufferedSize(), right.getBufferedSize()));
+            openFiles.remove(largest.directory);
+            finish(largest);
+        }
+    }
+
+    private long getBufferedSize() {
+        long size = 0;
+        for (OpenFile file : openFiles.values()) {
+            size += file.getBufferedSize();
+        }
+        return size;
+    }
+
+    private void finish(OpenFile file) throws IOException {
+        try {
+            if (file.batch.size() > 0) {
+                file.sink.write(file.batch);
+                file.rows += file.batch.size();
+            }
+            file.sink.close();
+        } catch (IOException | RuntimeException e) {
+            file.content.close();
+            throw e;
+        }
+        finished.add(new ParquetDataset.DatasetFile(file.path, file.partition, file.rows,
+                file.content.getLength(), file.content));
+    }
+
+    /**
+     * Hive's escaping of partition directory names: characters that are special in paths, URIs or globs
+     * become {@code %XX}.
+     */
+    static String escapePathName(String name) {
+        if (name == null || name.isEmpty()) {
+            return DEFAULT_PARTITION;
+        }
+        StringBuilder escaped = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < 0x20 || c == 0x7F || "\"#%'*/:=?\\{[]^".indexOf(c) >= 0) {
+                escaped.append('%').append(String.format("%02X", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static final class OpenFile {
+        private final String directory;
+        private final String path;
+        private final Map<String, String> partition;
+        private final SpillOutputFile content;
+        private final BatchSink sink;
+        private final RecordBatch batch;
+        private long rows;
+
+        OpenFile(String directory, String path, Map<String, String> partition, SpillOutputFile content,
+                 BatchSink sink, RecordBatch batch) {
+            this.directory = directory;
+            this.path = path;
+            this.partition = partition;
+            this.content = content;
+            this.sink = sink;
+            this.batch = batch;
+        }
+
+        /**
+         * Row group the writer holds in memory; the part already flushed is in {@code content}.
+         */
+        long getBufferedSize() {
+            return sink.getDataSize() - content.getLength();
+        }
+    }
+}
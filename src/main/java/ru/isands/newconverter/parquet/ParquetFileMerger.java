@@ -0,0 +1,68 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.MessageType;
+import ru.isands.newconverter.exception.ConversionException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Concatenates Parquet files with the same schema by copying their row groups. Pages are copied as they are,
+ * without decoding or recompressing; column indexes, offset indexes and bloom filters are carried over.
+ * The schema and key-value metadata are taken from the first appended file.
+ */
+public class ParquetFileMerger implements Closeable {
+    private final OutputFile target;
+    private final long rowGroupSize;
+    private ParquetFileWriter writer;
+    private MessageType schema;
+    private Map<String, String> keyValueMetadata;
+
+    public ParquetFileMerger(OutputFile target, long rowGroupSize) {
+        this.target = target;
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    public void append(InputFile file) throws IOException {
+        try (ParquetFileReader reader = ParquetFileReader.open(file);
+             SeekableInputStream in = file.newStream()) {
+            FileMetaData metadata = reader.getFooter().getFileMetaData();
+            if (writer == null) {
+                schema = metadata.getSchema();
+                keyValueMetadata = metadata.getKeyValueMetaData();
+                writer = new ParquetFileWriter(target, schema, ParquetFileWriter.Mode.OVERWRITE, rowGroupSize, 0);
+                writer.start();
+            } else if (!schema.equals(metadata.getSchema())) {
+                throw new ConversionException("Cannot merge Parquet files with different schemas");
+            }
+            for (BlockMetaData rowGroup : reader.getFooter().getBlocks()) {
+                writer.startBlock(rowGroup.getRowCount());
+                for (ColumnChunkMetaData chunk : rowGroup.getColumns()) {
+                    writer.appendColumnChunk(schema.getColumnDescription(chunk.getPath().toArray()), in, chunk,
+                            reader.readBloomFilter(chunk), reader.readColumnIndex(chunk), reader.readOffsetIndex(chunk));
+                }
+                writer.endBlock();
+            }
+        }
+    }
+
+    /**
+     * Writes the footer. Nothing is written when no file was appended.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.end(keyValueMetadata);
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ru.isands.newconverter.parquet;
+
+import io.swagger.v3.oas.annotations.Parameter;
+
+import java.util.List;
+
+/**
+ * Optional column projection and row filter applied while reading a Parquet file.
+ */
+public class ParquetQuery {
+    @Parameter(description = "Columns to return, comma separated. All columns when empty")
+    private List<String> columns;
+    @Parameter(description = "Row filter, e.g. \"price >= 10 and (region = 'EU' or region is null)\"")
+    private String filter;
+
+    public boolean isEmpty() {
+        return (columns == null || columns.isEmpty()) && (filter == null || filter.isBlank());
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<String> columns) {
+        this.columns = columns;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public String toString() {
+        return "ParquetQuery{columns=" + columns + ", filter=" + filter + "}";
+    }
+}
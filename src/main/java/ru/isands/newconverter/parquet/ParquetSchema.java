@@ -0,0 +1,165 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaParseException;
+import org.apache.parquet.avro.AvroSchemaConverter;
+import org.apache.parquet.avro.AvroWriteSupport;
+import org.apache.parquet.conf.PlainParquetConfiguration;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.schema.MessageType;
+import ru.isands.newconverter.exception.ConversionException;
+import ru.isands.newconverter.schema.ColumnType;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inferred columns together with everything derived from them for writing: the Avro schema, the Parquet
+ * schema and the Avro schema JSON stored in the footer. Immutable, so one instance serves concurrent writers.
+ */
+public final class ParquetSchema {
+    private final Map<String, ColumnType> columnTypes;
+    private final String[] names;
+    private final ColumnType[] types;
+    private final Schema avroSchema;
+    private final MessageType messageType;
+    private final String avroSchemaJson;
+
+    public ParquetSchema(Map<String, ColumnType> columnTypes, Schema avroSchema) {
+        this.columnTypes = Collections.unmodifiableMap(new LinkedHashMap<>(columnTypes));
+        this.names = columnTypes.keySet().toArray(new String[0]);
+        this.types = columnTypes.values().toArray(new ColumnType[0]);
+        this.avroSchema = avroSchema;
+        this.messageType = new AvroSchemaConverter(newWriterConfiguration()).convert(avroSchema);
+        this.avroSchemaJson = avroSchema.toString();
+    }
+
+    /**
+     * Schema of an existing file, to write more rows into it: the Avro schema from its footer, or one converted
+     * from its Parquet schema.
+     *
+     * @throws ConversionException if the writers cannot reproduce the Parquet schema of the file exactly
+     */
+    public static ParquetSchema read(InputFile file) throws IOException {
+        FileMetaData metadata;
+        try (ParquetFileReader reader = ParquetFileReader.open(file)) {
+            metadata = reader.getFooter().getFileMetaData();
+        }
+        String avroSchemaJson = metadata.getKeyValueMetaData().get(BatchWriteSupport.AVRO_SCHEMA_KEY);
+        Schema avroSchema;
+        try {
+            avroSchema = avroSchemaJson != null
+                    ? new Schema.Parser().setValidate(false).parse(avroSchemaJson)
+                    : new AvroSchemaConverter(newWriterConfiguration()).convert(metadata.getSchema());
+        } catch (SchemaParseException | IllegalArgumentException e) {
+            throw new ConversionException("Unsupported schema of the existing Parquet file: " + e.getMessage(), e);
+        }
+        Map<String, ColumnType> columnTypes = new LinkedHashMap<>();
+        for (Schema.Field field : avroSchema.getFields()) {
+            // The writers write every column as optional, see SchemaAccumulator#toSchema
+            Schema fieldSchema = field.schema();
+            ColumnType type = fieldSchema.getType() == Schema.Type.UNION && fieldSchema.getTypes().size() == 2
+                    && fieldSchema.isNullable() ? columnTypeOf(AvroValues.nonNullBranch(fieldSchema)) : null;
+            if (type == null) {
+                throw new ConversionException("Cannot write column '" + field.name() + "' of the existing Parquet file: "
+                        + fieldSchema);
+            }
+            columnTypes.put(field.name(), type);
+        }
+        ParquetSchema schema = new ParquetSchema(columnTypes, avroSchema);
+        if (!schema.getMessageType().equals(metadata.getSchema())) {
+            throw new ConversionException("The Parquet schema of the existing file cannot be written back as it is:\n"
+                    + metadata.getSchema());
+        }
+        return schema;
+    }
+
+    /**
+     * @return the column type written as {@code schema}, {@code null} if the writers do not produce it
+     */
+    private static ColumnType columnTypeOf(Schema schema) {
+        LogicalType logicalType = schema.getLogicalType();
+        return switch (schema.getType()) {
+            case STRING -> logicalType == null ? ColumnType.STRING
+                    : logicalType.getName().equals(LogicalTypes.uuid().getName()) ? ColumnType.UUID : null;
+            case INT -> logicalType == null ? ColumnType.INT
+                    : logicalType instanceof LogicalTypes.Date ? ColumnType.DATE : null;
+            case LONG -> logicalType == null ? ColumnType.LONG
+                    : logicalType instanceof LogicalTypes.TimestampMillis ? ColumnType.TIMESTAMP_MILLIS
+                    : logicalType instanceof LogicalTypes.TimestampMicros ? ColumnType.TIMESTAMP_MICROS : null;
+            case DOUBLE -> logicalType == null ? ColumnType.DOUBLE : null;
+            case BOOLEAN -> ColumnType.BOOLEAN;
+            case BYTES -> logicalType instanceof LogicalTypes.Decimal ? ColumnType.DECIMAL : null;
+            case RECORD, ARRAY, MAP -> ColumnType.NESTED;
+            default -> null;
+        };
+    }
+
+    /**
+     * Configuration for both writers: standard three-level lists, which allow null elements,
+     * and UUIDs as 16-byte Parquet UUIDs rather than strings.
+     */
+    public static PlainParquetConfiguration newWriterConfiguration() {
+        PlainParquetConfiguration conf = new PlainParquetConfiguration();
+        conf.setBoolean(AvroWriteSupport.WRITE_OLD_LIST_STRUCTURE, false);
+        conf.setBoolean(AvroWriteSupport.WRITE_PARQUET_UUID, true);
+        return conf;
+    }
+
+    /**
+     * Column names and types in order; two inputs with equal signatures get the same column vectors.
+     */
+    public static List<Map.Entry<String, ColumnType>> signatureOf(Map<String, ColumnType> columnTypes) {
+        List<Map.Entry<String, ColumnType>> signature = new ArrayList<>(columnTypes.size());
+        for (Map.Entry<String, ColumnType> column : columnTypes.entrySet()) {
+            signature.add(Map.entry(column.getKey(), column.getValue()));
+        }
+        return signature;
+    }
+
+    public Map<String, ColumnType> getColumnTypes() {
+        return columnTypes;
+    }
+
+    /**
+     * @return {@code true} if a column holds records, arrays or maps, which only the Avro writer supports
+     */
+    public boolean hasNestedColumns() {
+        return columnTypes.containsValue(ColumnType.NESTED);
+    }
+
+    String[] getNames() {
+        return names.clone();
+    }
+
+    ColumnType[] getTypes() {
+        return types.clone();
+    }
+
+    /**
+     * Non-null schema of a column.
+     */
+    Schema getColumnSchema(int column) {
+        return AvroValues.nonNullBranch(avroSchema.getFields().get(column).schema());
+    }
+
+    public Schema getAvroSchema() {
+        return avroSchema;
+    }
+
+    public MessageType getMessageType() {
+        return messageType;
+    }
+
+    public String getAvroSchemaJson() {
+        return avroSchemaJson;
+    }
+}
@@ -0,0 +1,50 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.avro.Schema;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.isands.newconverter.schema.ColumnType;
+import ru.isands.newconverter.schema.SchemaAccumulator;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recently used {@link ParquetSchema}s by column signature and inferred Avro schema, so recurring inputs with
+ * the same columns do not convert and re-serialize their schemas on every request.
+ */
+@Component
+public class ParquetSchemaCache {
+    private final Map<Key, ParquetSchema> schemas;
+
+    /**
+     * The Avro schema alone is not enough: EMPTY and STRING, or BIT and INT, columns map to the same Avro type
+     * but need different column vectors. The signature alone misses decimal precision and nested structure.
+     */
+    private record Key(List<Map.Entry<String, ColumnType>> signature, Schema avroSchema) {
+    }
+
+    public ParquetSchemaCache(@Value("${app.inference.schema-cache-size:256}") int maxEntries) {
+        this.schemas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ParquetSchema> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public ParquetSchema get(SchemaAccumulator columns) {
+        Map<String, ColumnType> columnTypes = columns.getColumnTypes();
+        Schema avroSchema = columns.toSchema();
+        Key key = new Key(ParquetSchema.signatureOf(columnTypes), avroSchema);
+        synchronized (schemas) {
+            ParquetSchema schema = schemas.get(key);
+            if (schema == null) {
+                schema = new ParquetSchema(columnTypes, avroSchema);
+                schemas.put(key, schema);
+            }
+            return schema;
+        }
+    }
+}
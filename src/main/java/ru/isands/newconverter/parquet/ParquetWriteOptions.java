@@ -0,0 +1,189 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.springframework.util.unit.DataSize;
+import ru.isands.newconverter.exception.ConversionException;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Parquet writer tuning. Defaults come from {@code app.parquet.*}, a request may override any of them;
+ * {@code null} means "not set".
+ */
+public class ParquetWriteOptions {
+    private static final Set<CompressionCodecName> SUPPORTED_CODECS = EnumSet.of(
+            CompressionCodecName.UNCOMPRESSED,
+            CompressionCodecName.SNAPPY,
+            CompressionCodecName.GZIP,
+            CompressionCodecName.ZSTD,
+            CompressionCodecName.LZ4_RAW);
+    private static final String ZSTD_LEVEL_KEY = "parquet.compression.codec.zstd.level";
+
+    private CompressionCodecName codec;
+    private Integer zstdLevel;
+    private DataSize rowGroupSize;
+    private DataSize pageSize;
+    private DataSize dictionaryPageSize;
+    private Boolean dictionary;
+    private PageVersion pageVersion;
+    private Integer pageRowCountLimit;
+    private Boolean bloomFilter;
+
+    /**
+     * @return copy of these options with every value set in {@code overrides} replaced
+     */
+    public ParquetWriteOptions overrideWith(ParquetWriteOptions overrides) {
+        if (overrides == null) {
+            return overrideWith(new ParquetWriteOptions());
+        }
+        ParquetWriteOptions merged = new ParquetWriteOptions();
+        merged.codec = pick(overrides.codec, codec);
+        merged.zstdLevel = pick(overrides.zstdLevel, zstdLevel);
+        merged.rowGroupSize = pick(overrides.rowGroupSize, rowGroupSize);
+        merged.pageSize = pick(overrides.pageSize, pageSize);
+        merged.dictionaryPageSize = pick(overrides.dictionaryPageSize, dictionaryPageSize);
+        merged.dictionary = pick(overrides.dictionary, dictionary);
+        merged.pageVersion = pick(overrides.pageVersion, pageVersion);
+        merged.pageRowCountLimit = pick(overrides.pageRowCountLimit, pageRowCountLimit);
+        merged.bloomFilter = pick(overrides.bloomFilter, bloomFilter);
+        return merged;
+    }
+
+    /**
+     * @return copy of these options with a row group size of at most {@code maxBytes}
+     */
+    public ParquetWriteOptions withRowGroupSizeAtMost(long maxBytes) {
+        ParquetWriteOptions capped = overrideWith(null);
+        if (rowGroupSize != null && rowGroupSize.toBytes() > maxBytes) {
+            capped.rowGroupSize = DataSize.ofBytes(maxBytes);
+        }
+        return capped;
+    }
+
+    /**
+     * Applies the options that are set; parquet-mr defaults stay in place for the rest.
+     */
+    public <B extends ParquetWriter.Builder<?, B>> B applyTo(B builder) {
+        validate();
+        if (codec != null) builder.withCompressionCodec(codec);
+        if (zstdLevel != null) builder.config(ZSTD_LEVEL_KEY, String.valueOf(zstdLevel));
+        if (rowGroupSize != null) builder.withRowGroupSize(rowGroupSize.toBytes());
+        if (pageSize != null) builder.withPageSize(Math.toIntExact(pageSize.toBytes()));
+        if (dictionaryPageSize != null) builder.withDictionaryPageSize(Math.toIntExact(dictionaryPageSize.toBytes()));
+        if (dictionary != null) builder.withDictionaryEncoding(dictionary);
+        if (pageVersion != null) builder.withWriterVersion(pageVersion.getWriterVersion());
+        if (pageRowCountLimit != null) builder.withPageRowCountLimit(pageRowCountLimit);
+        if (bloomFilter != null) {
+            // Adaptive filters are sized from the observed distinct values instead of the 1MB maximum per column
+            builder.withBloomFilterEnabled(bloomFilter).withAdaptiveBloomFilterEnabled(bloomFilter);
+        }
+        return builder;
+    }
+
+    private void validate() {
+        if (codec != null && !SUPPORTED_CODECS.contains(codec)) {
+            throw new ConversionException("Unsupported compression codec: " + codec + ", expected one of " + SUPPORTED_CODECS);
+        }
+        if (zstdLevel != null && (zstdLevel < 1 || zstdLevel > 22)) {
+            throw new ConversionException("ZSTD level must be between 1 and 22");
+        }
+        checkSize("Row group size", rowGroupSize, Long.MAX_VALUE);
+        checkSize("Page size", pageSize, Integer.MAX_VALUE);
+        checkSize("Dictionary page size", dictionaryPageSize, Integer.MAX_VALUE);
+        if (pageRowCountLimit != null && pageRowCountLimit <= 0) {
+            throw new ConversionException("Page row count limit must be positive");
+        }
+    }
+
+    private static void checkSize(String name, DataSize size, long max) {
+        if (size != null && (size.toBytes() <= 0 || size.toBytes() > max)) {
+            throw new ConversionException(name + " must be between 1B and " + max + "B");
+        }
+    }
+
+    private static <T> T pick(T override, T value) {
+        return override != null ? override : value;
+    }
+
+    public CompressionCodecName getCodec() {
+        return codec;
+    }
+
+    public void setCodec(CompressionCodecName codec) {
+        this.codec = codec;
+    }
+
+    public Integer getZstdLevel() {
+        return zstdLevel;
+    }
+
+    public void setZstdLevel(Integer zstdLevel) {
+        this.zstdLevel = zstdLevel;
+    }
+
+    public DataSize getRowGroupSize() {
+        return rowGroupSize;
+    }
+
+    public void setRowGroupSize(DataSize rowGroupSize) {
+        this.rowGroupSize = rowGroupSize;
+    }
+
+    public DataSize getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(DataSize pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public DataSize getDictionaryPageSize() {
+        return dictionaryPageSize;
+    }
+
+    public void setDictionaryPageSize(DataSize dictionaryPageSize) {
+        this.dictionaryPageSize = dictionaryPageSize;
+    }
+
+    public Boolean getDictionary() {
+        return dictionary;
+    }
+
+    public void setDictionary(Boolean dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public PageVersion getPageVersion() {
+        return pageVersion;
+    }
+
+    public void setPageVersion(PageVersion pageVersion) {
+        this.pageVersion = pageVersion;
+    }
+
+    public Integer getPageRowCountLimit() {
+        return pageRowCountLimit;
+    }
+
+    public void setPageRowCountLimit(Integer pageRowCountLimit) {
+        this.pageRowCountLimit = pageRowCountLimit;
+    }
+
+    public Boolean getBloomFilter() {
+        return bloomFilter;
+    }
+
+    public void setBloomFilter(Boolean bloomFilter) {
+        this.bloomFilter = bloomFilter;
+    }
+
+    @Override
+    public String toString() {
+        return "ParquetWriteOptions{codec=" + codec + ", zstdLevel=" + zstdLevel + ", rowGroupSize=" + rowGroupSize
+                + ", pageSize=" + pageSize + ", dictionaryPageSize=" + dictionaryPageSize + ", dictionary=" + dictionary
+                + ", pageVersion=" + pageVersion + ", pageRowCountLimit=" + pageRowCountLimit
+                + ", bloomFilter=" + bloomFilter + "}";
+    }
+}
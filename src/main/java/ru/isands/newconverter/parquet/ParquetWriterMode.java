@@ -0,0 +1,11 @@
+package ru.isands.newconverter.parquet;
+
+/**
+ * How flat records are encoded into Parquet.
+ */
+public enum ParquetWriterMode {
+    /** Values go from the columnar batch straight to the Parquet record consumer. */
+    DIRECT,
+    /** Records are materialized as Avro {@code GenericRecord}s and written by {@code AvroParquetWriter}. */
+    AVRO
+}
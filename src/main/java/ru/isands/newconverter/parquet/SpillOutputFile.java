@@ -0,0 +1,105 @@
+package ru.isands.newconverter.parquet;
+
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Parquet {@link OutputFile} kept in memory up to a threshold and spilled to a temp file beyond it.
+ * Closing it deletes the spill file, so a finished result is held only until it has been sent.
+ */
+public class SpillOutputFile implements OutputFile, AutoCloseable {
+    private final DeferredFileOutputStream buffer;
+
+    public SpillOutputFile(int threshold, File directory) {
+        this.buffer = DeferredFileOutputStream.builder()
+                .setThreshold(threshold)
+                .setPrefix("parquet_")
+                .setSuffix(".parquet")
+                .setDirectory(directory)
+                .get();
+    }
+
+    @Override
+    public PositionOutputStream create(long blockSizeHint) {
+        return new PositionOutputStream() {
+            @Override
+            public long getPos() {
+                return buffer.getByteCount();
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                buffer.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                buffer.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                buffer.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                buffer.close();
+            }
+        };
+    }
+
+    @Override
+    public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+        return create(blockSizeHint);
+    }
+
+    @Override
+    public boolean supportsBlockSize() {
+        return false;
+    }
+
+    @Override
+    public long defaultBlockSize() {
+        return 0;
+    }
+
+    public long getLength() {
+        return buffer.getByteCount();
+    }
+
+    /**
+     * Copies the written file to {@code out}; the writer must be closed first.
+     */
+    public void transferTo(OutputStream out) throws IOException {
+        buffer.writeTo(out);
+    }
+
+    /**
+     * Reads the written file back; the writer must be closed first.
+     */
+    public InputFile toInputFile() throws IOException {
+        return buffer.isInMemory()
+                ? BufferInputFile.wrap("parquet_part", buffer.getData())
+                : BufferInputFile.map(buffer.getFile().toPath());
+    }
+
+    @Override
+    public void close() {
+        try {
+            buffer.close();
+        } catch (IOException ignored) {
+            // the spill file is deleted below either way
+        }
+        File spillFile = buffer.getFile();
+        if (spillFile != null && spillFile.exists()) {
+            spillFile.delete();
+        }
+    }
+}
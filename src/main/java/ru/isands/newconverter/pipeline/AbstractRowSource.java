@@ -0,0 +1,45 @@
+package ru.isands.newconverter.pipeline;
+
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Base class for sources that read one record ahead.
+ */
+public abstract class AbstractRowSource implements RowSource {
+    private Map<String, Object> nextRow;
+    private boolean finished;
+
+    /**
+     * @return next record or {@code null} when the input is exhausted
+     */
+    protected abstract Map<String, Object> fetch();
+
+    /**
+     * @return record already fetched by {@link #hasNext()} but not yet returned, or {@code null}
+     */
+    protected Map<String, Object> pollBuffered() {
+        Map<String, Object> row = nextRow;
+        nextRow = null;
+        return row;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (nextRow == null && !finished) {
+            nextRow = fetch();
+            finished = nextRow == null;
+        }
+        return nextRow != null;
+    }
+
+    @Override
+    public Map<String, Object> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Map<String, Object> row = nextRow;
+        nextRow = null;
+        return row;
+    }
+}
@@ -0,0 +1,279 @@
+package ru.isands.newconverter.pipeline;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BaseIntVector;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DateMilliVector;
+import org.apache.arrow.vector.Decimal256Vector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float2Vector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeStampVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.ValueVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.complex.BaseListVector;
+import org.apache.arrow.vector.complex.MapVector;
+import org.apache.arrow.vector.complex.StructVector;
+import org.apache.arrow.vector.dictionary.Dictionary;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.DictionaryEncoding;
+import org.apache.arrow.vector.types.pojo.Field;
+import ru.isands.newconverter.exception.ConversionException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads Arrow IPC input, in the file or the streaming format, one record batch at a time. The file format wraps
+ * the streaming format between magic bytes and a footer, so both are read sequentially from the upload.
+ * Values are converted like those of {@link ParquetRowSource}: dates and timestamps become ISO-8601 strings,
+ * decimals {@link java.math.BigDecimal}s, structs and maps {@link Map}s, lists {@link List}s.
+ */
+public class ArrowRowSource extends AbstractRowSource {
+    private static final byte[] FILE_MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+    // The magic is padded to 8 bytes before the stream starts
+    private static final int FILE_HEADER_LENGTH = 8;
+    // Every message starts with a continuation marker and the length of its metadata
+    private static final int CONTINUATION_MARKER = 0xFFFFFFFF;
+    private static final int MAX_SCHEMA_LENGTH = 16 * 1024 * 1024;
+
+    private final BufferAllocator allocator = new RootAllocator();
+    private final ArrowStreamReader reader;
+    private final VectorSchemaRoot root;
+    private final Map<Long, Dictionary> dictionaries;
+    private final String[] names;
+    private int position;
+    private boolean exhausted;
+
+    public ArrowRowSource(InputStream input) {
+        ArrowStreamReader streamReader = null;
+        try {
+            BufferedInputStream buffered = new BufferedInputStream(input);
+            buffered.mark(FILE_HEADER_LENGTH);
+            if (!Arrays.equals(buffered.readNBytes(FILE_MAGIC.length), FILE_MAGIC)) {
+                buffered.reset();
+            } else {
+                buffered.skipNBytes(FILE_HEADER_LENGTH - FILE_MAGIC.length);
+            }
+            checkSchemaMessage(buffered);
+            streamReader = new ArrowStreamReader(buffered, allocator);
+            this.root = streamReader.getVectorSchemaRoot();
+            // Filled in place as dictionary batches arrive
+            this.dictionaries = streamReader.getDictionaryVectors();
+            this.names = root.getSchema().getFields().stream().map(Field::getName).toArray(String[]::new);
+            this.reader = streamReader;
+        } catch (IOException | RuntimeException e) {
+            if (streamReader != null) {
+                try {
+                    streamReader.close();
+                } catch (IOException | RuntimeException ignored) {
+                    // the input is discarded anyway
+                }
+            }
+            allocator.close();
+            throw new ConversionException("Failed to read Arrow file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rejects input that does not start with an Arrow schema message before the reader allocates whatever length
+     * the first bytes happen to spell.
+     */
+    private static void checkSchemaMessage(BufferedInputStream input) throws IOException {
+        input.mark(Long.BYTES);
+        ByteBuffer prefix = ByteBuffer.wrap(input.readNBytes(Long.BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        input.reset();
+        if (prefix.remaining() < Long.BYTES || prefix.getInt() != CONTINUATION_MARKER) {
+            throw new IOException("not an Arrow IPC file or stream");
+        }
+        int length = prefix.getInt();
+        if (length <= 0 || length > MAX_SCHEMA_LENGTH) {
+            throw new IOException("invalid schema message length " + length);
+        }
+    }
+
+    /**
+     * @return {@code false} at the end of the input
+     */
+    private boolean ensureRows() {
+        try {
+            while (position >= root.getRowCount()) {
+                // The file format goes on with a footer after the end-of-stream marker, it must not be read again
+                if (exhausted || !reader.loadNextBatch()) {
+                    exhausted = true;
+                    return false;
+                }
+                position = 0;
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            throw new ConversionException("Failed to read Arrow file: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected Map<String, Object> fetch() {
+        if (!ensureRows()) {
+            return null;
+        }
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (int column = 0; column < names.length; column++) {
+            row.put(names[column], value(root.getVector(column), position));
+        }
+        position++;
+        return row;
+    }
+
+    @Override
+    public int fillBatch(RecordBatch batch) {
+        batch.reset();
+        Map<String, Object> buffered = pollBuffered();
+        if (buffered != null) {
+            batch.appendRow(buffered);
+        }
+        // Values go from the Arrow vectors straight into the typed columns, no per-row map
+        int[] positions = batch.positionsOf(names);
+        while (!batch.isFull() && ensureRows()) {
+            int rows = Math.min(batch.capacity() - batch.size(), root.getRowCount() - position);
+            for (int column = 0; column < batch.getColumnCount(); column++) {
+                ColumnVector target = batch.getColumn(column);
+                FieldVector source = positions[column] >= 0 ? root.getVector(positions[column]) : null;
+                for (int row = position; row < position + rows; row++) {
+                    target.append(source != null ? value(source, row) : null);
+                }
+            }
+            batch.addRows(rows);
+            position += rows;
+        }
+        return batch.size();
+    }
+
+    private Object value(ValueVector vector, int index) {
+        if (vector.isNull(index)) {
+            return null;
+        }
+        DictionaryEncoding encoding = vector.getField().getDictionary();
+        if (encoding != null) {
+            Dictionary dictionary = dictionaries.get(encoding.getId());
+            return value(dictionary.getVector(), (int) ((BaseIntVector) vector).getValueAsLong(index));
+        }
+        if (vector instanceof BitVector bits) {
+            return bits.get(index) == 1;
+        }
+        if (vector instanceof TinyIntVector || vector instanceof SmallIntVector || vector instanceof IntVector) {
+            return (int) ((BaseIntVector) vector).getValueAsLong(index);
+        }
+        if (vector instanceof BigIntVector || vector instanceof BaseIntVector) {
+            return ((BaseIntVector) vector).getValueAsLong(index);
+        }
+        if (vector instanceof Float2Vector half) {
+            return (double) half.getValueAsFloat(index);
+        }
+        if (vector instanceof Float4Vector floats) {
+            return (double) floats.get(index);
+        }
+        if (vector instanceof Float8Vector doubles) {
+            return doubles.get(index);
+        }
+        if (vector instanceof DecimalVector decimals) {
+            return decimals.getObject(index);
+        }
+        if (vector instanceof Decimal256Vector decimals) {
+            return decimals.getObject(index);
+        }
+        if (vector instanceof DateDayVector days) {
+            return LocalDate.ofEpochDay(days.get(index)).toString();
+        }
+        if (vector instanceof DateMilliVector millis) {
+            return LocalDate.ofEpochDay(Math.floorDiv(millis.get(index), 86_400_000L)).toString();
+        }
+        if (vector instanceof TimeStampVector timestamps) {
+            return timestamp(timestamps, index);
+        }
+        if (vector instanceof VarCharVector text) {
+            return new String(text.get(index), StandardCharsets.UTF_8);
+        }
+        if (vector instanceof VarBinaryVector binary) {
+            return new String(binary.get(index), StandardCharsets.UTF_8);
+        }
+        if (vector instanceof StructVector struct) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (FieldVector child : struct.getChildrenFromFields()) {
+                map.put(child.getName(), value(child, index));
+            }
+            return map;
+        }
+        if (vector instanceof MapVector mapVector) {
+            StructVector entries = (StructVector) mapVector.getDataVector();
+            ValueVector keys = entries.getChildrenFromFields().get(0);
+            ValueVector values = entries.getChildrenFromFields().get(1);
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int entry = mapVector.getElementStartIndex(index); entry < mapVector.getElementEndIndex(index); entry++) {
+                map.put(String.valueOf(value(keys, entry)), value(values, entry));
+            }
+            return map;
+        }
+        if (vector instanceof BaseListVector list) {
+            ValueVector elements = list.getChildrenFromFields().get(0);
+            List<Object> items = new ArrayList<>();
+            for (int item = list.getElementStartIndex(index); item < list.getElementEndIndex(index); item++) {
+                items.add(value(elements, item));
+            }
+            return items;
+        }
+        Object value = vector.getObject(index);
+        // Large strings, times, intervals and the rest, in their text form
+        return value instanceof Number || value instanceof Boolean ? value : value.toString();
+    }
+
+    /**
+     * Timestamps with a time zone are instants in UTC, those without one local date-times, as in Parquet input.
+     */
+    private static String timestamp(TimeStampVector vector, int index) {
+        ArrowType.Timestamp type = (ArrowType.Timestamp) vector.getField().getType();
+        long value = vector.get(index);
+        Instant instant = switch (type.getUnit()) {
+            case SECOND -> Instant.ofEpochSecond(value);
+            case MILLISECOND -> Instant.ofEpochMilli(value);
+            case MICROSECOND -> Instant.EPOCH.plus(value, ChronoUnit.MICROS);
+            case NANOSECOND -> Instant.EPOCH.plusNanos(value);
+        };
+        return type.getTimezone() != null ? instant.toString() : LocalDateTime.ofInstant(instant, ZoneOffset.UTC).toString();
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException ignored) {
+            // nothing to do, the input is discarded anyway
+        } finally {
+            allocator.close();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ru.isands.newconverter.pipeline;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Record batches handed from a reader to a writer task. Batches stay in memory while all buffers sharing
+ * {@code memoryUsed} fit into {@code memoryLimit}; once a buffer goes beyond, the rest of its batches spill to a
+ * {@link BatchSpillFile} and are read back one at a time. Memory is returned on {@link #close()}.
+ */
+public class BatchBuffer implements Closeable {
+    private final Supplier<RecordBatch> newBatch;
+    private final AtomicLong memoryUsed;
+    private final long memoryLimit;
+    private final File spillDirectory;
+    private final List<RecordBatch> batches = new ArrayList<>();
+    private long memory;
+    private long rows;
+    private BatchSpillFile spill;
+
+    public interface BatchConsumer {
+        void accept(RecordBatch batch) throws IOException;
+    }
+
+    /**
+     * @param newBatch creates empty batches of the buffered column types
+     */
+    public BatchBuffer(Supplier<RecordBatch> newBatch, AtomicLong memoryUsed, long memoryLimit, File spillDirectory) {
+        this.newBatch = newBatch;
+        this.memoryUsed = memoryUsed;
+        this.memoryLimit = memoryLimit;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @return the batch to fill next: a new one if {@code batch} is kept in memory, {@code batch} itself if it
+     * was spilled
+     */
+    public RecordBatch add(RecordBatch batch) throws IOException {
+        rows += batch.size();
+        long size = batch.estimatedSize();
+        // Once spilling, every later batch is spilled too, so that they are read back in order
+        if (spill == null) {
+            if (memoryUsed.addAndGet(size) <= memoryLimit) {
+                batches.add(batch);
+                memory += size;
+                return newBatch.get();
+            }
+            memoryUsed.addAndGet(-size);
+            spill = new BatchSpillFile(spillDirectory);
+        }
+        spill.write(batch);
+        return batch;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public boolean isEmpty() {
+        return rows == 0;
+    }
+
+    /**
+     * Hands out the batches in the order they were added; spilled ones are read back into one reused batch.
+     */
+    public void forEach(BatchConsumer consumer) throws IOException {
+        for (RecordBatch batch : batches) {
+            consumer.accept(batch);
+        }
+        if (spill != null) {
+            RecordBatch batch = newBatch.get();
+            while (spill.read(batch)) {
+                consumer.accept(batch);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        memoryUsed.addAndGet(-memory);
+        memory = 0;
+        batches.clear();
+        if (spill != null) {
+            spill.close();
+        }
+    }
+}
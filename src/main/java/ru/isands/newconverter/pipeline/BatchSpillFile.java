@@ -0,0 +1,68 @@
+package ru.isands.newconverter.pipeline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Record batches written to a temp file and read back in the same order. Per batch the row count, then per column
+ * the null bitmap and the non-null values as primitives; strings as the batch dictionary and codes. The file is
+ * deleted on {@link #close()}.
+ */
+class BatchSpillFile implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private DataOutputStream out;
+    private DataInputStream in;
+    private int batches;
+
+    BatchSpillFile(File directory) throws IOException {
+        Files.createDirectories(directory.toPath());
+        this.file = File.createTempFile("rows_", ".spill", directory);
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file.toPath()), BUFFER_SIZE));
+    }
+
+    void write(RecordBatch batch) throws IOException {
+        batch.writeTo(out);
+        batches++;
+    }
+
+    /**
+     * Reads the next batch into {@code batch}, with the column types of the written ones.
+     *
+     * @return {@code false} after the last batch
+     */
+    boolean read(RecordBatch batch) throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath()), BUFFER_SIZE));
+        }
+        if (batches == 0) {
+            return false;
+        }
+        batch.readFrom(in);
+        batches--;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (out != null) {
+                out.close();
+            }
+            if (in != null) {
+                in.close();
+            }
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
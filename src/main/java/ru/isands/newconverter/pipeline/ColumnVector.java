@@ -0,0 +1,787 @@
+package ru.isands.newconverter.pipeline;
+
+import ru.isands.newconverter.schema.ColumnType;
+import ru.isands.newconverter.schema.TypeMismatchException;
+import ru.isands.newconverter.schema.ValueScanner;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One column of a {@link RecordBatch}: values are kept in a primitive array, nulls in a bitset.
+ */
+public abstract class ColumnVector {
+    // Approximate heap taken by one boxed value besides its reference, for estimatedSize()
+    static final long DECIMAL_SIZE = 64;
+    static final long STRING_SIZE = 96;
+    static final long NESTED_SIZE = 512;
+
+    protected final BitSet nulls = new BitSet();
+    protected final ValueScanner scanner = new ValueScanner();
+    protected int size;
+
+    public static ColumnVector create(ColumnType type, int capacity) {
+        return switch (type) {
+            case BIT, INT -> new IntVector(capacity);
+            case LONG -> new LongVector(capacity);
+            case DECIMAL -> new DecimalVector(capacity);
+            case DOUBLE -> new DoubleVector(capacity);
+            case BOOLEAN -> new BooleanVector();
+            case DATE -> new DateVector(capacity);
+            case TIMESTAMP_MILLIS -> new TimestampVector(capacity, false);
+            case TIMESTAMP_MICROS -> new TimestampVector(capacity, true);
+            case EMPTY, UUID, STRING -> new StringVector(capacity, type);
+            case NESTED -> new NestedVector(capacity);
+        };
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        return nulls.get(row);
+    }
+
+    /**
+     * @return boxed value of the row or {@code null}
+     */
+    public abstract Object get(int row);
+
+    /**
+     * Appends a raw reader value, converting it to the column type.
+     *
+     * @throws TypeMismatchException if the value does not fit the column type
+     */
+    public void append(Object value) {
+        if (value == null) {
+            appendNull();
+        } else if (value instanceof String string) {
+            append(string);
+        } else {
+            appendValue(value);
+        }
+    }
+
+    public void append(String value) {
+        if (value == null || value.isEmpty()) {
+            appendNull();
+        } else {
+            appendString(value);
+        }
+    }
+
+    public void appendNull() {
+        nulls.set(size++);
+    }
+
+    /**
+     * Appends a row of another vector of the same column type as it is, without converting it again.
+     */
+    public void appendFrom(ColumnVector source, int row) {
+        if (source.isNull(row)) {
+            appendNull();
+        } else {
+            copy(source, row);
+        }
+    }
+
+    void reset() {
+        nulls.clear();
+        size = 0;
+    }
+
+    /**
+     * Rough heap size of the vector, for row buffers that spill to disk beyond their share.
+     */
+    public long estimatedSize() {
+        return nulls.size() / Byte.SIZE + valuesSize();
+    }
+
+    /**
+     * Writes the rows in the spill format of {@link BatchSpillFile}: the null bitmap, then the non-null values.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        writeNulls(out);
+        for (int row = 0; row < size; row++) {
+            if (!isNull(row)) {
+                writeValue(out, row);
+            }
+        }
+    }
+
+    /**
+     * Appends {@code rows} rows written by {@link #writeTo(DataOutput)}.
+     */
+    void readFrom(DataInput in, int rows) throws IOException {
+        BitSet rowNulls = readNulls(in);
+        for (int row = 0; row < rows; row++) {
+            if (rowNulls.get(row)) {
+                appendNull();
+            } else {
+                readValue(in);
+            }
+        }
+    }
+
+    private void writeNulls(DataOutput out) throws IOException {
+        long[] words = nulls.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    private static BitSet readNulls(DataInput in) throws IOException {
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Integral reader value as it is, never rounded or wrapped.
+     *
+     * @throws TypeMismatchException for fractional numbers, integers beyond a long and anything else
+     */
+    private static long exactLong(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof BigInteger integer) {
+            try {
+                return integer.longValueExact();
+            } catch (ArithmeticException e) {
+                throw new TypeMismatchException();
+            }
+        }
+        throw new TypeMismatchException();
+    }
+
+    protected abstract void appendString(String value);
+
+    protected abstract void appendValue(Object value);
+
+    /**
+     * Copies a non-null row of a vector of the same class.
+     */
+    protected abstract void copy(ColumnVector source, int row);
+
+    protected abstract long valuesSize();
+
+    protected abstract void writeValue(DataOutput out, int row) throws IOException;
+
+    /**
+     * Appends a non-null value written by {@link #writeValue(DataOutput, int)}.
+     */
+    protected abstract void readValue(DataInput in) throws IOException;
+
+    public static final class IntVector extends ColumnVector {
+        private final int[] values;
+
+        IntVector(int capacity) {
+            this.values = new int[capacity];
+        }
+
+        public int getInt(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        protected void appendString(String value) {
+            switch (scanner.scan(value)) {
+                case EMPTY -> appendNull();
+                case BIT, INT -> values[size++] = (int) scanner.getLong();
+                default -> throw new TypeMismatchException();
+            }
+        }
+
+        @Override
+        protected void appendValue(Object value) {
+            long longValue = exactLong(value);
+            if (longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE) {
+                throw new TypeMismatchException();
+            }
+            values[size++] = (int) longValue;
+        }
+
+        @Override
+        protected void copy(ColumnVector source, int row) {
+            values[size++] = ((IntVector) source).values[row];
+        }
+
+        @Override
+        protected long valuesSize() {
+            return (long) values.length * Integer.BYTES;
+        }
+
+        @Override
+        protected void writeValue(DataOutput out, int row) throws IOException {
+            out.writeInt(values[row]);
+        }
+
+        @Override
+        protected void readValue(DataInput in) throws IOException {
+            values[size++] = in.readInt();
+        }
+    }
+
+    public static final class LongVector extends ColumnVector {
+        private final long[] values;
+
+        LongVector(int capacity) {
+            this.values = new long[capacity];
+        }
+
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        protected void appendString(String value) {
+            switch (scanner.scan(value)) {
+                case EMPTY -> appendNull();
+                case BIT, INT, LONG -> values[size++] = scanner.getLong();
+                default -> throw new TypeMismatchException();
+            }
+        }
+
+        @Override
+        protected void appendValue(Object value) {
+            values[size++] = exactLong(value);
+        }
+
+        @Override
+        protected void copy(ColumnVector source, int row) {
+            values[size++] = ((LongVector) source).values[row];
+        }
+
+        @Override
+        protected long valuesSize() {
+            return (long) values.length * Long.BYTES;
+        }
+
+        @Override
+        protected void writeValue(DataOutput out, int row) throws IOException {
+            out.writeLong(values[row]);
+        }
+
+        @Override
+        protected void readValue(DataInput in) throws IOException {
+            values[size++] = in.readLong();
+        }
+    }
+
+    public static final class DoubleVector extends ColumnVector {
+        private final double[] values;
+
+        DoubleVector(int capacity) {
+            this.values = new double[capacity];
+        }
+
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        protected void appendString(String value) {
+            switch (scanner.scan(value)) {
+                case EMPTY -> appendNull();
+                case BIT, INT, LONG, DECIMAL, DOUBLE -> values[size++] = scanner.getDouble();
+                default -> throw new TypeMismatchException();
+            }
+        }
+
+        @Override
+        protected void appendValue(Object value) {
+            if (value instanceof Number number) {
+                values[size++] = number.doubleValue();
+            } else {
+                appendString(value.toString());
+            }
+        }
+
+        @Override
+        protected void copy(ColumnVector source, int row) {
+            values[size++] = ((DoubleVector) source).values[row];
+        }
+
+        @Override
+        protected long valuesSize() {
+            return (long) values.length * Double.BYTES;
+        }
+
+        @Override
+        protected void writeValue(DataOutput out, int row) throws IOException {
+            out.writeDouble(values[row]);
+        }
+
+        @Override
+        protected void readValue(DataInput in) throws IOException {
+            values[size++] = in.readDouble();
+        }
+    }
+
+    /**
+     * Decimals as parsed; the writer scales them to the precision and scale of the column.
+     */
+    public static final class DecimalVector extends ColumnVector {
+        private final BigDecimal[] values;
+
+        DecimalVector(int capacity) {
+            this.values = new BigDecimal[capacity];
+        }
+
+        public BigDecimal getDecimal(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void reset() {
+            // super.reset() zeroes size, the rows to clear are counted first
+            int rows = size;
+            super.reset();
+            Arrays.fill(values, 0, rows, null);
+        }
+
+        @Override
+        protected void appendString(String value) {
+            switch (scanner.scan(value)) {
+                case EMPTY -> appendNull();
+                case BIT, INT, LONG, DECIMAL -> values[size++] = scanner.getDecimal();
+                default -> throw new TypeMismatchException();
+            }
+        }
+
+        @Override
+        protected void appendValue(Object value) {
+            if (value instanceof BigDecimal decimal) {
+                values[size++] = decimal;
+            } else if (value instanceof BigInteger integer) {
+                values[size++] = new BigDecimal(integer);
+            } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                values[size++] = BigDecimal.valueOf(((Number) value).longValue());
+            } else {
+                appendString(value.toString());
+            }
+        }
+
+        @Override
+        protected void copy(ColumnVector source, int row) {
+            values[size++] = ((DecimalVector) source).values[row];
+        }
+
+        @Override
+        protected long valuesSize() {
+            return (long) values.length * Long.BYTES + (long) size * DECIMAL_SIZE;
+        }
+
+        @Override
+        protected void writeValue(DataOutput out, int row) throws IOException {
+            SpillValues.writeDecimal(out, values[row]);
+        }
+
+        @Override
+        protected void readValue(DataInput in) throws IOException {
+            values[size++] = SpillValues.readDecimal(in);
+        }
+    }
+
+    /**
+     * Dates as days since the epoch.
+     */
+    public static final class DateVector extends ColumnVector {
+        private final int[] values;
+
+        DateVector(int capacity) {
+            this.values = new int[capacity];
+        }
+
+        public int getInt(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        protected void appendString(String value) {
+            switch (scanner.scan(value)) {
+                case EMPTY -> appendNull();
+                case DATE -> values[size++] = (int) scanner.getLong();
+                default -> throw new TypeMismatchException();
+            }
+        }
+
+        @Override
+        protected void appendValue(Object value) {
+            appendString(value.toString());
+        }
+
+        @Override
+        protected void copy(ColumnVector source, int row) {
+            values[size++] = ((DateVector) source).values[row];
+        }
+
+        @Override
+        protected long valuesSize() {
+            return (long) values.length * Integer.BYTES;
+        }
+
+        @Override
+        protected void writeValue(DataOutput out, int row) throws IOException {
+            out.writeInt(values[row]);
+        }
+
+        @Override
+        protected void readValue(DataInput in) throws IOException {
+            values[size++] = in.readInt();
+        }
+    }
+
+    /**
+     * UTC timestamps in milliseconds or microseconds since the epoch; dates are taken at midnight.
+     */
+    public static final class TimestampVector extends ColumnVector {
+        private final long[] values;
+        private final boolean micros;
+
+        TimestampVector(int capacity, boolean micros) {
+            this.values = new long[capacity];
+            this.micros = micros;
+        }
+
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        protected void appendString(String value) {
+            switch (scanner.scan(value)) {
+                case EMPTY -> appendNull();
+                case DATE -> appendMicros(scanner.getLong() * 86_400_000_000L);
+                case TIMESTAMP_MILLIS -> appendMicros(scanner.getLong());
+                case TIMESTAMP_MICROS -> {
+                    if (!micros) {
+                        throw new TypeMismatchException();
+                    }
+                    appendMicros(scanner.getLong());
+                }
+                default -> throw new TypeMismatchException();
+            }
+        }
+
+        private void appendMicros(long epochMicros) {
+            values[size++] = micros ? epochMicros : Math.floorDiv(epochMicros, 1000L);
+        }
+
+        @Override
+        protected void appendValue(Object value) {
+            appendString(value.toString());
+        }
+
+        @Override
+        protected void copy(ColumnVector source, int row) {
+            values[size++] = ((TimestampVector) source).values[row];
+        }
+
+        @Override
+        protected long valuesSize() {
+            return (long) values.length * Long.BYTES;
+        }
+
+        @Override
+        protected void writeValue(DataOutput out, int row) throws IOException {
+            out.writeLong(values[row]);
+        }
+
+        @Override
+        protected void readValue(DataInput in) throws IOException {
+            values[size++] = in.readLong();
+        }
+    }
+
+    /**
+     * Maps and lists as read, converted to Avro records, arrays and maps by the writer.
+     */
+    public static final class NestedVector extends ColumnVector {
+        private final Object[] values;
+
+        NestedVector(int capacity) {
+            this.values = new Object[capacity];
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        @Override
+        void reset() {
+            // super.reset() zeroes size, the rows to clear are counted first
+            int rows = size;
+            super.reset();
+            Arrays.fill(values, 0, rows, null);
+        }
+
+        @Override
+        protected void appendString(String value) {
+            if (!value.isBlank()) {
+                throw new TypeMismatchException();
+            }
+            appendNull();
+        }
+
+        @Override
+        protected void appendValue(Object value) {
+            if (!(value instanceof Map<?, ?>) && !(value instanceof List<?>)) {
+                throw new TypeMismatchException();
+            }
+            values[size++] = value;
+        }
+
+        @Override
+        protected void copy(ColumnVector source, int row) {
+            values[size++] = ((NestedVector) source).values[row];
+        }
+
+        @Override
+        protected long valuesSize() {
+            return (long) values.length * Long.BYTES + (long) size * NESTED_SIZE;
+        }
+
+        @Override
+        protected void writeValue(DataOutput out, int row) throws IOException {
+            SpillValues.writeValue(out, values[row]);
+        }
+
+        @Override
+        protected void readValue(DataInput in) throws IOException {
+            values[size++] = SpillValues.readValue(in);
+        }
+    }
+
+    public static final class BooleanVector extends ColumnVector {
+        private final BitSet values = new BitSet();
+
+        public boolean getBoolean(int row) {
+            return values.get(row);
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : values.get(row);
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            values.clear();
+        }
+
+        @Override
+        protected void appendString(String value) {
+            switch (scanner.scan(value)) {
+                case EMPTY -> appendNull();
+                case BOOLEAN -> values.set(size++, scanner.getBoolean());
+                case BIT -> values.set(size++, scanner.getLong() == 1);
+                default -> throw new TypeMismatchException();
+            }
+        }
+
+        @Override
+        protected void appendValue(Object value) {
+            appendString(value.toString());
+        }
+
+        @Override
+        protected void copy(ColumnVector source, int row) {
+            values.set(size++, ((BooleanVector) source).values.get(row));
+        }
+
+        @Override
+        protected long valuesSize() {
+            return values.size() / Byte.SIZE;
+        }
+
+        @Override
+        protected void writeValue(DataOutput out, int row) throws IOException {
+            out.writeBoolean(values.get(row));
+        }
+
+        @Override
+        protected void readValue(DataInput in) throws IOException {
+            values.set(size++, in.readBoolean());
+        }
+    }
+
+    /**
+     * Dictionary-encoded strings: every distinct value of the batch is stored once.
+     */
+    public static final class StringVector extends ColumnVector {
+        private final int[] codes;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private String[] entries = new String[16];
+        private long entryBytes;
+        // Dictionary of the spilled batch being read back
+        private String[] spilledEntries;
+        private final ColumnType type;
+
+        /**
+         * @param type {@link ColumnType#STRING}, {@link ColumnType#UUID} or {@link ColumnType#EMPTY}
+         */
+        StringVector(int capacity, ColumnType type) {
+            this.codes = new int[capacity];
+            this.type = type;
+        }
+
+        public String getString(int row) {
+            return entries[codes[row]];
+        }
+
+        public int getCode(int row) {
+            return codes[row];
+        }
+
+        public String getEntry(int code) {
+            return entries[code];
+        }
+
+        public int getDictionarySize() {
+            return dictionary.size();
+        }
+
+        @Override
+        public Object get(int row) {
+            return isNull(row) ? null : entries[codes[row]];
+        }
+
+        @Override
+        void reset() {
+            super.reset();
+            dictionary.clear();
+            Arrays.fill(entries, null);
+            entryBytes = 0;
+        }
+
+        @Override
+        protected void appendString(String value) {
+            // Only blank values were seen for this column while inferring the schema
+            if (type == ColumnType.EMPTY && !value.isBlank()) {
+                throw new TypeMismatchException();
+            }
+            if (type == ColumnType.UUID) {
+                ColumnType valueType = ValueScanner.classify(value);
+                if (valueType == ColumnType.EMPTY) {
+                    appendNull();
+                    return;
+                }
+                if (valueType != ColumnType.UUID) {
+                    throw new TypeMismatchException();
+                }
+                value = value.trim();
+            }
+            appendEntry(value);
+        }
+
+        private void appendEntry(String value) {
+            Integer code = dictionary.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                if (code == entries.length) {
+                    entries = Arrays.copyOf(entries, entries.length * 2);
+                }
+                entries[code] = value;
+                dictionary.put(value, code);
+                entryBytes += STRING_SIZE + 2L * value.length();
+            }
+            codes[size++] = code;
+        }
+
+        @Override
+        protected void appendValue(Object value) {
+            append(value.toString());
+        }
+
+        @Override
+        protected void copy(ColumnVector source, int row) {
+            appendEntry(((StringVector) source).getString(row));
+        }
+
+        @Override
+        protected long valuesSize() {
+            return (long) codes.length * Integer.BYTES + entryBytes;
+        }
+
+        /**
+         * Writes the dictionary once, then the rows as codes.
+         */
+        @Override
+        void writeTo(DataOutput out) throws IOException {
+            out.writeInt(dictionary.size());
+            for (int code = 0; code < dictionary.size(); code++) {
+                SpillValues.writeString(out, entries[code]);
+            }
+            super.writeTo(out);
+        }
+
+        @Override
+        void readFrom(DataInput in, int rows) throws IOException {
+            spilledEntries = new String[in.readInt()];
+            for (int code = 0; code < spilledEntries.length; code++) {
+                spilledEntries[code] = SpillValues.readString(in);
+            }
+            try {
+                super.readFrom(in, rows);
+            } finally {
+                spilledEntries = null;
+            }
+        }
+
+        @Override
+        protected void writeValue(DataOutput out, int row) throws IOException {
+            out.writeInt(codes[row]);
+        }
+
+        @Override
+        protected void readValue(DataInput in) throws IOException {
+            appendEntry(spilledEntries[in.readInt()]);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package ru.isands.newconverter.pipeline;
+
+import ru.isands.newconverter.exception.ConversionException;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Pool shared by all requests for CPU-bound conversion work, so parallel conversions cannot
+ * start more threads than there are cores.
+ */
+public class ConversionPool implements AutoCloseable {
+    private final ForkJoinPool pool;
+
+    /**
+     * @param parallelism number of worker threads, 0 or less for one per available processor
+     */
+    public ConversionPool(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * @param requested configured degree of parallelism, 0 or less for the whole pool
+     * @return the requested degree capped by the pool size
+     */
+    public int limit(int requested) {
+        return requested > 0 ? Math.min(requested, getParallelism()) : getParallelism();
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        return pool.submit(task);
+    }
+
+    /**
+     * Waits for a task and rethrows its failure as thrown by the task.
+     */
+    public static <T> T await(Future<T> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConversionException("Conversion was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new ConversionException("Conversion task failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,17 @@
+package ru.isands.newconverter.pipeline;
+
+import com.opencsv.exceptions.CsvValidationException;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Source of raw CSV records for {@link CsvRowSource}.
+ */
+interface CsvRecordReader extends Closeable {
+
+    /**
+     * @return next record or {@code null} at the end of the input
+     */
+    String[] readNext() throws IOException, CsvValidationException;
+}
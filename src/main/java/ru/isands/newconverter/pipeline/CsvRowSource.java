@@ -0,0 +1,112 @@
+package ru.isands.newconverter.pipeline;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import ru.isands.newconverter.exception.ConversionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads CSV records lazily. The first line is the header, missing cells become empty strings.
+ */
+public class CsvRowSource extends AbstractRowSource {
+    private final CsvRecordReader csvReader;
+    private final String[] headers;
+
+    public CsvRowSource(InputStream input) {
+        this(new SequentialReader(new CSVReader(new InputStreamReader(input, StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * Source that parses chunks of {@code chunkSize} bytes on the pool while earlier records are consumed.
+     */
+    public static CsvRowSource parallel(InputStream input, ConversionPool pool, int chunkSize) {
+        return new CsvRowSource(new ParallelCsvReader(input, pool, chunkSize));
+    }
+
+    private CsvRowSource(CsvRecordReader csvReader) {
+        this.csvReader = csvReader;
+        try {
+            this.headers = csvReader.readNext();
+        } catch (IOException | CsvValidationException e) {
+            close();
+            throw new ConversionException("Failed to read CSV file: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected Map<String, Object> fetch() {
+        if (headers == null || headers.length == 0) {
+            return null;
+        }
+        try {
+            String[] row = csvReader.readNext();
+            if (row == null) {
+                return null;
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < headers.length; i++) {
+                String value = i < row.length ? row[i] : "";
+                map.put(headers[i], value);
+            }
+            return map;
+        } catch (IOException | CsvValidationException e) {
+            throw new ConversionException("Failed to read CSV file: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int fillBatch(RecordBatch batch) {
+        batch.reset();
+        if (headers == null || headers.length == 0) {
+            return 0;
+        }
+        Map<String, Object> buffered = pollBuffered();
+        if (buffered != null) {
+            batch.appendRow(buffered);
+        }
+        // Cells go straight into the typed columns, no per-row map
+        int[] positions = batch.positionsOf(headers);
+        try {
+            String[] row;
+            while (!batch.isFull() && (row = csvReader.readNext()) != null) {
+                batch.appendRow(row, positions);
+            }
+            return batch.size();
+        } catch (IOException | CsvValidationException e) {
+            throw new ConversionException("Failed to read CSV file: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            csvReader.close();
+        } catch (IOException ignored) {
+            // nothing to do, the input is discarded anyway
+        }
+    }
+
+    private static class SequentialReader implements CsvRecordReader {
+        private final CSVReader reader;
+
+        SequentialReader(CSVReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public String[] readNext() throws IOException, CsvValidationException {
+            return reader.readNext();
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ru.isands.newconverter.pipeline;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import ru.isands.newconverter.exception.ConversionException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads JSON records lazily from a top-level array, a single top-level object or a sequence of top-level
+ * objects (NDJSON / JSON Lines). Records are built straight from parser tokens, only one record is held at a time.
+ */
+public class JsonRowSource extends AbstractRowSource {
+    private final JsonParser parser;
+    private final boolean array;
+    private boolean firstConsumed;
+
+    public JsonRowSource(JsonFactory factory, InputStream input) {
+        try {
+            this.parser = factory.createParser(input);
+        } catch (IOException e) {
+            throw new ConversionException("Failed to read JSON file: " + e.getMessage(), e);
+        }
+        try {
+            JsonToken first = parser.nextToken();
+            if (first == null) {
+                throw new ConversionException("JSON file content is empty");
+            }
+            if (first != JsonToken.START_ARRAY && first != JsonToken.START_OBJECT) {
+                throw new ConversionException("Invalid JSON format: must start with '[' or '{'");
+            }
+            this.array = first == JsonToken.START_ARRAY;
+        } catch (IOException e) {
+            close();
+            throw new ConversionException("Failed to read JSON file: " + e.getMessage(), e);
+        } catch (ConversionException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    protected Map<String, Object> fetch() {
+        try {
+            if (!array) {
+                // The first object is already current, every following top-level value is another line
+                if (firstConsumed) {
+                    JsonToken token = parser.nextToken();
+                    if (token == null) {
+                        return null;
+                    }
+                    if (token != JsonToken.START_OBJECT) {
+                        throw new ConversionException("Invalid JSON Lines format: every line must be an object");
+                    }
+                }
+                firstConsumed = true;
+                return readObject();
+            }
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                return null;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new ConversionException("Invalid JSON format: array elements must be objects");
+            }
+            return readObject();
+        } catch (IOException e) {
+            throw new ConversionException("Failed to read JSON file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the object whose START_OBJECT is the current token. Values get the same Java types
+     * as an untyped Jackson binding: maps, lists, strings, Integer/Long/BigInteger, Double and Boolean.
+     */
+    private Map<String, Object> readObject() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            map.put(field, readValue(parser.nextToken()));
+        }
+        return map;
+    }
+
+    private Object readValue(JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                return readObject();
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                JsonToken item;
+                while ((item = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    list.add(readValue(item));
+                }
+                return list;
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                throw new ConversionException("Invalid JSON format: unexpected token " + token);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            parser.close();
+        } catch (IOException ignored) {
+            // nothing to do, the input is discarded anyway
+        }
+    }
+}
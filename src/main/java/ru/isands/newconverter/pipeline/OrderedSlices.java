@@ -0,0 +1,171 @@
+package ru.isands.newconverter.pipeline;
+
+import ru.isands.newconverter.exception.ConversionException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads several parts of an input at once on the {@link ConversionPool}, at most {@code parallelism} at a time,
+ * and hands out their items in part order. Parts are read in slices of at most {@code sliceSize} items, and each
+ * part reads at most {@link #SLICES_AHEAD} slices ahead of the consumer, so memory is bounded by slices rather
+ * than by whole parts.
+ */
+class OrderedSlices<T> {
+    static final int SLICES_AHEAD = 2;
+
+    /**
+     * Reads one part. Called by one pool thread at a time.
+     */
+    interface SliceReader<T> extends Closeable {
+        /**
+         * @return up to {@code size} items, {@code null} at the end of the part
+         */
+        List<T> next(int size) throws IOException;
+    }
+
+    private final ConversionPool pool;
+    private final int parallelism;
+    private final int sliceSize;
+    private final Iterator<Callable<SliceReader<T>>> parts;
+    private final Deque<Part> window = new ArrayDeque<>();
+
+    /**
+     * @param parts open the parts in order, on the pool
+     */
+    OrderedSlices(ConversionPool pool, int parallelism, int sliceSize, Iterator<Callable<SliceReader<T>>> parts) {
+        this.pool = pool;
+        this.parallelism = parallelism;
+        this.sliceSize = sliceSize;
+        this.parts = parts;
+        openParts();
+    }
+
+    /**
+     * @return the next slice, {@code null} when all parts are read
+     */
+    List<T> next() throws IOException {
+        Part part;
+        while ((part = window.peek()) != null) {
+            List<T> slice = part.take();
+            if (slice != null) {
+                return slice;
+            }
+            window.poll();
+            openParts();
+        }
+        return null;
+    }
+
+    void cancel() {
+        for (Part part : window) {
+            part.cancel();
+        }
+        window.clear();
+    }
+
+    private void openParts() {
+        while (window.size() < parallelism && parts.hasNext()) {
+            Part part = new Part(parts.next());
+            window.add(part);
+            part.schedule();
+        }
+    }
+
+    private final class Part {
+        private final Callable<SliceReader<T>> opener;
+        private final Deque<List<T>> slices = new ArrayDeque<>();
+        private SliceReader<T> reader;
+        private boolean reading;
+        private boolean done;
+        private Throwable failure;
+
+        Part(Callable<SliceReader<T>> opener) {
+            this.opener = opener;
+        }
+
+        synchronized List<T> take() throws IOException {
+            try {
+                while (slices.isEmpty() && !done && failure == null) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ConversionException("Conversion was interrupted", e);
+            }
+            if (failure != null) {
+                if (failure instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (failure instanceof IOException ioException) {
+                    throw ioException;
+                }
+                throw new ConversionException("Conversion task failed: " + failure.getMessage(), failure);
+            }
+            List<T> slice = slices.poll();
+            schedule();
+            return slice;
+        }
+
+        synchronized void schedule() {
+            if (!reading && !done && failure == null && slices.size() < SLICES_AHEAD) {
+                reading = true;
+                pool.submit(this::read);
+            }
+        }
+
+        synchronized void cancel() {
+            done = true;
+            slices.clear();
+            if (!reading) {
+                close();
+            }
+        }
+
+        private Void read() {
+            List<T> slice = null;
+            Throwable readFailure = null;
+            try {
+                if (reader == null) {
+                    reader = opener.call();
+                }
+                slice = reader.next(sliceSize);
+            } catch (Exception | Error e) {
+                readFailure = e;
+            }
+            synchronized (this) {
+                reading = false;
+                if (readFailure != null) {
+                    failure = readFailure;
+                } else if (slice == null) {
+                    done = true;
+                } else if (!done) {
+                    slices.add(slice);
+                }
+                if (done || failure != null) {
+                    close();
+                }
+                notifyAll();
+                schedule();
+            }
+            return null;
+        }
+
+        private void close() {
+            if (reader == null) {
+                return;
+            }
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+                // nothing to do, the input is discarded anyway
+            }
+            reader = null;
+        }
+    }
+}
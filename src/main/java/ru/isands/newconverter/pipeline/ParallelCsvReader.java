@@ -0,0 +1,161 @@
+package ru.isands.newconverter.pipeline;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import ru.isands.newconverter.exception.ConversionException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Cuts the input into chunks that end on record boundaries and parses them on the {@link ConversionPool}.
+ * Records are returned in input order; only a few chunks ahead of the reader are kept in memory.
+ * <p>
+ * Boundaries are found by tracking the state of opencsv's default parser: whether it is inside quotes and
+ * whether it is inside a field. {@code \} starts a field and escapes a following quote, backslash or
+ * separator; {@code ""} inside quotes or a field is a literal quote, any other {@code "} toggles quoting;
+ * a separator outside quotes and a line end ({@code \n} or {@code \r}, as read by
+ * {@link java.io.BufferedReader#readLine()}) outside quotes end the field. Only a line feed outside quotes
+ * ends a chunk. Quotes, backslashes, separators and line ends never occur inside multibyte UTF-8 sequences,
+ * so the scan works on raw bytes.
+ */
+class ParallelCsvReader implements CsvRecordReader {
+    private static final byte QUOTE = '"';
+    private static final byte ESCAPE = '\\';
+    private static final byte SEPARATOR = ',';
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final InputStream input;
+    private final ConversionPool pool;
+    private final int chunkSize;
+    private final int maxPending;
+    private final Deque<Future<List<String[]>>> pending = new ArrayDeque<>();
+    private byte[] carry = new byte[0];
+    private boolean endOfInput;
+    private List<String[]> records = List.of();
+    private int position;
+
+    ParallelCsvReader(InputStream input, ConversionPool pool, int chunkSize) {
+        this.input = input;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.maxPending = pool.getParallelism() + 1;
+    }
+
+    @Override
+    public String[] readNext() throws IOException {
+        while (position >= records.size()) {
+            submitChunks();
+            Future<List<String[]>> next = pending.poll();
+            if (next == null) {
+                return null;
+            }
+            records = ConversionPool.await(next);
+            position = 0;
+        }
+        String[] record = records.get(position);
+        records.set(position++, null);
+        return record;
+    }
+
+    private void submitChunks() throws IOException {
+        while (pending.size() < maxPending && !endOfInput) {
+            byte[] chunk = nextChunk();
+            if (chunk.length > 0) {
+                pending.add(pool.submit(() -> parse(chunk)));
+            }
+        }
+    }
+
+    /**
+     * Reads at least one chunk worth of bytes and returns them up to the last complete record.
+     * A record longer than a chunk makes the chunk grow until the record ends.
+     */
+    private byte[] nextChunk() throws IOException {
+        byte[] buffer = Arrays.copyOf(carry, carry.length + chunkSize);
+        int length = carry.length;
+        int scanned = 0;
+        int boundary = 0;
+        boolean inQuotes = false;
+        boolean inField = false;
+        while (true) {
+            length += input.readNBytes(buffer, length, buffer.length - length);
+            endOfInput = length < buffer.length;
+            while (scanned < length) {
+                byte b = buffer[scanned];
+                if ((b == ESCAPE || b == QUOTE) && scanned + 1 == length && !endOfInput) {
+                    // the byte it may pair with is in the next read
+                    break;
+                }
+                byte next = scanned + 1 < length ? buffer[scanned + 1] : 0;
+                if (b == ESCAPE) {
+                    // opencsv escapes only inside quotes or a field, and marks the field started before it checks
+                    inField = true;
+                    if (next == QUOTE || next == ESCAPE || next == SEPARATOR) {
+                        scanned++;
+                    }
+                } else if (b == QUOTE) {
+                    if ((inQuotes || inField) && next == QUOTE) {
+                        scanned++;
+                    } else {
+                        inQuotes = !inQuotes;
+                    }
+                    inField = !inField;
+                } else if (b == NEWLINE || b == CARRIAGE_RETURN) {
+                    if (!inQuotes) {
+                        inField = false;
+                        if (b == NEWLINE) {
+                            boundary = scanned + 1;
+                        }
+                    }
+                } else if (b == SEPARATOR && !inQuotes) {
+                    inField = false;
+                } else {
+                    inField = true;
+                }
+                scanned++;
+            }
+            if (endOfInput) {
+                carry = new byte[0];
+                return Arrays.copyOf(buffer, length);
+            }
+            if (boundary > 0) {
+                carry = Arrays.copyOfRange(buffer, boundary, length);
+                return Arrays.copyOf(buffer, boundary);
+            }
+            buffer = Arrays.copyOf(buffer, buffer.length + chunkSize);
+        }
+    }
+
+    private static List<String[]> parse(byte[] chunk) {
+        List<String[]> records = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(new InputStreamReader(new ByteArrayInputStream(chunk), StandardCharsets.UTF_8))) {
+            String[] record;
+            while ((record = reader.readNext()) != null) {
+                records.add(record);
+            }
+            return records;
+        } catch (IOException | CsvValidationException e) {
+            throw new ConversionException("Failed to read CSV file: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<List<String[]>> chunk : pending) {
+            chunk.cancel(false);
+        }
+        pending.clear();
+        input.close();
+    }
+}
@@ -0,0 +1,339 @@
+package ru.isands.newconverter.pipeline;
+
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericFixed;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.avro.AvroReadSupport;
+import org.apache.parquet.avro.AvroSchemaConverter;
+import org.apache.parquet.avro.AvroWriteSupport;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.conf.PlainParquetConfiguration;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+import ru.isands.newconverter.exception.ConversionException;
+import ru.isands.newconverter.parquet.FilterExpressionParser;
+import ru.isands.newconverter.parquet.ParquetQuery;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.Temporal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads Parquet records one by one, optionally decoding several row groups at once on the {@link ConversionPool}
+ * in slices of rows.
+ */
+public class ParquetRowSource extends AbstractRowSource {
+    private static final String AVRO_SCHEMA_KEY = "parquet.avro.schema";
+
+    private final InputFile inputFile;
+    private final ParquetConfiguration conf = new PlainParquetConfiguration();
+    private FilterCompat.Filter filter = FilterCompat.NOOP;
+    private final Set<String> outputColumns;
+    private final ParquetReader<GenericRecord> reader;
+    private final OrderedSlices<Map<String, Object>> rowGroups;
+    private List<Map<String, Object>> slice = List.of();
+    private int position;
+
+    public ParquetRowSource(InputFile inputFile) {
+        this(inputFile, null);
+    }
+
+    public ParquetRowSource(InputFile inputFile, ParquetQuery query) {
+        this(inputFile, query, null, 1, 0);
+    }
+
+    /**
+     * @param query       projection and filter pushed down to parquet-mr, {@code null} to read everything
+     * @param parallelism row groups decoded at once on {@code pool}; 1 or a single row group reads sequentially
+     * @param sliceRows   rows decoded at a time from each of those row groups
+     */
+    public ParquetRowSource(InputFile inputFile, ParquetQuery query, ConversionPool pool, int parallelism,
+                            int sliceRows) {
+        this.inputFile = inputFile;
+        try {
+            boolean hasQuery = query != null && !query.isEmpty();
+            boolean parallel = pool != null && parallelism > 1;
+            ParquetMetadata footer = null;
+            if (hasQuery || parallel) {
+                try (ParquetFileReader footerReader = ParquetFileReader.open(inputFile)) {
+                    footer = footerReader.getFooter();
+                }
+            }
+            this.outputColumns = hasQuery ? applyQuery(footer.getFileMetaData(), query) : null;
+            if (parallel && footer.getBlocks().size() > 1) {
+                this.reader = null;
+                this.rowGroups = new OrderedSlices<>(pool, parallelism, sliceRows, footer.getBlocks().stream()
+                        .<Callable<OrderedSlices.SliceReader<Map<String, Object>>>>map(block -> () -> openRowGroup(block))
+                        .iterator());
+            } else {
+                this.reader = openReader().build();
+                this.rowGroups = null;
+            }
+        } catch (IOException e) {
+            throw new ConversionException("Failed to read Parquet file: " + e.getMessage(), e);
+        }
+    }
+
+    private ParquetReader.Builder<GenericRecord> openReader() {
+        return AvroParquetReader.<GenericRecord>builder(inputFile, conf)
+                .disableCompatibility()
+                .withFilter(filter);
+    }
+
+    /**
+     * Opens one row group. parquet-mr selects row groups by their midpoint, so the byte range of the
+     * row group itself matches exactly that row group.
+     */
+    private OrderedSlices.SliceReader<Map<String, Object>> openRowGroup(BlockMetaData block) throws IOException {
+        ParquetReader<GenericRecord> rowGroupReader = openReader()
+                .withFileRange(block.getStartingPos(), block.getStartingPos() + block.getCompressedSize())
+                .build();
+        return new OrderedSlices.SliceReader<>() {
+            @Override
+            public List<Map<String, Object>> next(int size) throws IOException {
+                List<Map<String, Object>> rows = new ArrayList<>(size);
+                GenericRecord record;
+                while (rows.size() < size && (record = rowGroupReader.read()) != null) {
+                    rows.add(toRow(record));
+                }
+                return rows.isEmpty() ? null : rows;
+            }
+
+            @Override
+            public void close() throws IOException {
+                rowGroupReader.close();
+            }
+        };
+    }
+
+    /**
+     * Sets the requested projection and the filter. Columns used only by the filter are read too,
+     * record-level filtering needs their values, and are dropped from the output.
+     *
+     * @return columns to return, in the requested order, or {@code null} for all columns
+     */
+    private Set<String> applyQuery(FileMetaData metadata, ParquetQuery query) {
+        MessageType fileSchema = metadata.getSchema();
+        String avroSchemaJson = metadata.getKeyValueMetaData().get(AVRO_SCHEMA_KEY);
+        Schema avroSchema = avroSchemaJson != null
+                ? new Schema.Parser().parse(avroSchemaJson)
+                : new AvroSchemaConverter(conf).convert(fileSchema);
+        Set<String> readColumns = new LinkedHashSet<>();
+        Set<String> outputColumns = null;
+        if (query.getColumns() != null && !query.getColumns().isEmpty()) {
+            outputColumns = new LinkedHashSet<>();
+            for (String column : query.getColumns()) {
+                String name = column.trim();
+                if (avroSchema.getField(name) == null) {
+                    throw new ConversionException("Unknown column: " + name);
+                }
+                outputColumns.add(name);
+            }
+            readColumns.addAll(outputColumns);
+        }
+        if (query.getFilter() != null && !query.getFilter().isBlank()) {
+            FilterExpressionParser parser = FilterExpressionParser.parse(fileSchema, query.getFilter());
+            filter = FilterCompat.get(parser.toPredicate());
+            if (outputColumns != null) {
+                readColumns.addAll(parser.getColumns());
+            }
+        }
+        if (outputColumns != null) {
+            List<Schema.Field> fields = new ArrayList<>();
+            for (String column : readColumns) {
+                Schema.Field field = avroSchema.getField(column);
+                fields.add(new Schema.Field(field, field.schema()));
+            }
+            Schema projection = Schema.createRecord(avroSchema.getName(), avroSchema.getDoc(),
+                    avroSchema.getNamespace(), false, fields);
+            matchFileLayout(fileSchema);
+            conf.set(AvroReadSupport.AVRO_REQUESTED_PROJECTION, projection.toString());
+        }
+        return outputColumns;
+    }
+
+    /**
+     * parquet-avro converts the projection back to a Parquet schema, which has to match the file:
+     * UUIDs as fixed or as strings, lists with two or three levels.
+     */
+    private void matchFileLayout(GroupType group) {
+        for (Type field : group.getFields()) {
+            LogicalTypeAnnotation annotation = field.getLogicalTypeAnnotation();
+            if (field.isPrimitive()) {
+                if (annotation instanceof LogicalTypeAnnotation.UUIDLogicalTypeAnnotation) {
+                    conf.setBoolean(AvroWriteSupport.WRITE_PARQUET_UUID, true);
+                }
+                continue;
+            }
+            GroupType child = field.asGroupType();
+            if (annotation instanceof LogicalTypeAnnotation.ListLogicalTypeAnnotation
+                    && child.getFieldCount() == 1 && !child.getType(0).isPrimitive()
+                    && child.getType(0).getName().equals("list")) {
+                conf.setBoolean(AvroWriteSupport.WRITE_OLD_LIST_STRUCTURE, false);
+            }
+            matchFileLayout(child);
+        }
+    }
+
+    @Override
+    protected Map<String, Object> fetch() {
+        try {
+            if (rowGroups != null) {
+                while (position >= slice.size()) {
+                    slice = rowGroups.next();
+                    position = 0;
+                    if (slice == null) {
+                        slice = List.of();
+                        return null;
+                    }
+                }
+                Map<String, Object> row = slice.get(position);
+                slice.set(position++, null);
+                return row;
+            }
+            GenericRecord record = reader.read();
+            return record != null ? toRow(record) : null;
+        } catch (IOException e) {
+            throw new ConversionException("Failed to read Parquet file: " + e.getMessage(), e);
+        }
+    }
+
+    private Map<String, Object> toRow(GenericRecord record) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (Schema.Field field : record.getSchema().getFields()) {
+            if (outputColumns == null || outputColumns.contains(field.name())) {
+                map.put(field.name(), convertAvroValue(record.get(field.pos()), field.schema()));
+            }
+        }
+        return map;
+    }
+
+    @Override
+    public void close() {
+        if (rowGroups != null) {
+            rowGroups.cancel();
+            return;
+        }
+        try {
+            reader.close();
+        } catch (IOException ignored) {
+            // nothing to do, the input is discarded anyway
+        }
+    }
+
+    /**
+     * Maps Avro values to plain Java values for the text writers: strings, numbers, booleans, maps and lists.
+     * Dates and times become ISO-8601 strings, timestamps in UTC; decimals become {@link BigDecimal}s.
+     */
+    private static Object convertAvroValue(Object value, Schema schema) {
+        if (value == null) return null;
+        if (schema.getType() == Schema.Type.UNION) {
+            return convertAvroValue(value, schema.getTypes().get(GenericData.get().resolveUnion(schema, value)));
+        }
+        LogicalType logicalType = schema.getLogicalType();
+        if (logicalType != null) {
+            Object logicalValue = convertLogicalValue(value, logicalType);
+            if (logicalValue != null) return logicalValue;
+        }
+        if (value instanceof CharSequence) return value.toString();
+        if (value instanceof java.nio.ByteBuffer buffer) {
+            return new String(toBytes(buffer), StandardCharsets.UTF_8);
+        }
+        if (value instanceof GenericRecord record) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Schema.Field field : record.getSchema().getFields()) {
+                map.put(field.name(), convertAvroValue(record.get(field.pos()), field.schema()));
+            }
+            return map;
+        }
+        if (value instanceof Collection<?> collection) {
+            List<Object> list = new ArrayList<>(collection.size());
+            for (Object item : collection) {
+                list.add(convertAvroValue(item, schema.getElementType()));
+            }
+            return list;
+        }
+        if (value instanceof Map<?, ?> original) {
+            Map<Object, Object> result = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : original.entrySet()) {
+                result.put(
+                        String.valueOf(entry.getKey()),
+                        convertAvroValue(entry.getValue(), schema.getValueType())
+                );
+            }
+            return result;
+        }
+        return value;
+    }
+
+    /**
+     * @return the converted value, {@code null} if the logical type is not handled
+     */
+    private static Object convertLogicalValue(Object value, LogicalType logicalType) {
+        if (logicalType instanceof LogicalTypes.Decimal decimal) {
+            if (value instanceof java.nio.ByteBuffer buffer) {
+                return new BigDecimal(new BigInteger(toBytes(buffer)), decimal.getScale());
+            }
+            if (value instanceof GenericFixed fixed) {
+                return new BigDecimal(new BigInteger(fixed.bytes()), decimal.getScale());
+            }
+            return value instanceof BigDecimal ? value : null;
+        }
+        if ("uuid".equals(logicalType.getName()) && value instanceof GenericFixed fixed) {
+            java.nio.ByteBuffer bytes = java.nio.ByteBuffer.wrap(fixed.bytes());
+            return new UUID(bytes.getLong(), bytes.getLong()).toString();
+        }
+        if (!(value instanceof Number number)) {
+            // Values already converted by the data model, such as LocalDate or Instant
+            return value instanceof Temporal || value instanceof UUID ? value.toString() : null;
+        }
+        long longValue = number.longValue();
+        return switch (logicalType.getName()) {
+            case "date" -> LocalDate.ofEpochDay(longValue).toString();
+            case "time-millis" -> LocalTime.ofNanoOfDay(longValue * 1_000_000L).toString();
+            case "time-micros" -> LocalTime.ofNanoOfDay(longValue * 1_000L).toString();
+            case "timestamp-millis" -> Instant.ofEpochMilli(longValue).toString();
+            case "timestamp-micros" -> Instant.EPOCH.plus(longValue, ChronoUnit.MICROS).toString();
+            case "local-timestamp-millis" -> LocalDateTime.ofInstant(Instant.ofEpochMilli(longValue), ZoneOffset.UTC).toString();
+            case "local-timestamp-micros" ->
+                    LocalDateTime.ofInstant(Instant.EPOCH.plus(longValue, ChronoUnit.MICROS), ZoneOffset.UTC).toString();
+            default -> null;
+        };
+    }
+
+    private static byte[] toBytes(java.nio.ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,158 @@
+package ru.isands.newconverter.pipeline;
+
+import ru.isands.newconverter.schema.ColumnType;
+import ru.isands.newconverter.schema.TypeMismatchException;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columnar batch of records with a fixed set of typed columns.
+ * Column names are stored once per batch instead of once per row, values live in {@link ColumnVector}s.
+ * A batch is reused: every {@link RowSource#fillBatch(RecordBatch)} call starts from an empty batch.
+ */
+public class RecordBatch {
+    private final String[] columns;
+    private final ColumnVector[] vectors;
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    private final int capacity;
+    private final boolean strict;
+    private int size;
+
+    /**
+     * @param strict reject rows with columns outside of {@code columnTypes}
+     *               (the schema was inferred from a sample and must be recomputed)
+     */
+    public RecordBatch(Map<String, ColumnType> columnTypes, int capacity, boolean strict) {
+        this.columns = columnTypes.keySet().toArray(new String[0]);
+        this.vectors = new ColumnVector[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            vectors[i] = ColumnVector.create(columnTypes.get(columns[i]), capacity);
+            columnIndex.put(columns[i], i);
+        }
+        this.capacity = capacity;
+        this.strict = strict;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isFull() {
+        return size >= capacity;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    public ColumnVector getColumn(int column) {
+        return vectors[column];
+    }
+
+    public void reset() {
+        for (ColumnVector vector : vectors) {
+            vector.reset();
+        }
+        size = 0;
+    }
+
+    public void appendRow(Map<String, Object> row) {
+        if (strict && !columnIndex.keySet().containsAll(row.keySet())) {
+            throw new TypeMismatchException();
+        }
+        for (int i = 0; i < columns.length; i++) {
+            vectors[i].append(row.get(columns[i]));
+        }
+        size++;
+    }
+
+    /**
+     * Maps every batch column to its position in a positional row layout such as a CSV header.
+     * Missing columns get {@code -1}; with duplicated names the last one wins.
+     */
+    public int[] positionsOf(String[] header) {
+        int[] positions = new int[columns.length];
+        Arrays.fill(positions, -1);
+        for (int i = 0; i < header.length; i++) {
+            Integer column = columnIndex.get(header[i]);
+            if (column != null) {
+                positions[column] = i;
+            } else if (strict) {
+                throw new TypeMismatchException();
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Appends a positional row, see {@link #positionsOf(String[])}. Missing cells become nulls.
+     */
+    public void appendRow(String[] row, int[] positions) {
+        for (int i = 0; i < columns.length; i++) {
+            int position = positions[i];
+            vectors[i].append(position >= 0 && position < row.length ? row[position] : null);
+        }
+        size++;
+    }
+
+    /**
+     * Rough heap size of the batch, see {@link ColumnVector#estimatedSize()}.
+     */
+    public long estimatedSize() {
+        long bytes = 0;
+        for (ColumnVector vector : vectors) {
+            bytes += vector.estimatedSize();
+        }
+        return bytes;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (ColumnVector vector : vectors) {
+            vector.writeTo(out);
+        }
+    }
+
+    /**
+     * Replaces the rows with a batch written by {@link #writeTo(DataOutput)} with the same column types.
+     */
+    void readFrom(DataInput in) throws IOException {
+        reset();
+        int rows = in.readInt();
+        for (ColumnVector vector : vectors) {
+            vector.readFrom(in, rows);
+        }
+        size = rows;
+    }
+
+    /**
+     * Counts {@code rows} rows that were appended column by column, to every vector of {@link #getColumn(int)}.
+     */
+    public void addRows(int rows) {
+        size += rows;
+    }
+
+    /**
+     * Appends a row of another batch with the same column types, see {@link #positionsOf(String[])}
+     * for the positions of its columns.
+     */
+    public void appendRow(RecordBatch source, int row, int[] positions) {
+        for (int i = 0; i < columns.length; i++) {
+            vectors[i].appendFrom(source.vectors[positions[i]], row);
+        }
+        size++;
+    }
+}
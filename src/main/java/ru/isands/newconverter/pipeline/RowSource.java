@@ -0,0 +1,28 @@
+package ru.isands.newconverter.pipeline;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Pull-based cursor over the records of an input file.
+ * Readers produce rows lazily and writers consume them one at a time,
+ * so a conversion never holds the whole dataset in memory.
+ */
+public interface RowSource extends Iterator<Map<String, Object>>, AutoCloseable {
+
+    @Override
+    void close();
+
+    /**
+     * Clears the batch and fills it with up to {@link RecordBatch#capacity()} records.
+     *
+     * @return number of records in the batch, {@code 0} at the end of the input
+     */
+    default int fillBatch(RecordBatch batch) {
+        batch.reset();
+        while (!batch.isFull() && hasNext()) {
+            batch.appendRow(next());
+        }
+        return batch.size();
+    }
+}
@@ -0,0 +1,11 @@
+package ru.isands.newconverter.pipeline;
+
+/**
+ * Opens a fresh {@link RowSource} over the same input on every call.
+ * Used by writers that need more than one pass (e.g. schema inference before writing Parquet).
+ */
+@FunctionalInterface
+public interface RowSourceProvider {
+
+    RowSource open();
+}
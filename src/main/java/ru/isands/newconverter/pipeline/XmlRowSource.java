@@ -0,0 +1,153 @@
+package ru.isands.newconverter.pipeline;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
+import ru.isands.newconverter.exception.ConversionException;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads XML records lazily: every {@code <records>} element under the root is one record. A document without
+ * {@code <records>} elements is a single record. Elements are turned into maps the way an untyped XmlMapper
+ * binding does it: text-only elements become strings, repeated elements become lists.
+ */
+public class XmlRowSource extends AbstractRowSource {
+    private static final String RECORDS = "records";
+
+    private final JsonParser parser;
+    // Root children read so far, the single record when the document has no <records>
+    private Map<String, Object> document = new LinkedHashMap<>();
+    private boolean recordsFound;
+    private boolean finished;
+
+    public XmlRowSource(XmlFactory factory, InputStream input) {
+        try {
+            this.parser = factory.createParser(skipLeadingWhitespace(input));
+        } catch (IOException e) {
+            throw new ConversionException("Failed to read XML file: " + e.getMessage(), e);
+        }
+        try {
+            JsonToken root = parser.nextToken();
+            if (root != JsonToken.START_OBJECT) {
+                throw new ConversionException("Invalid XML format: the root element must contain elements");
+            }
+        } catch (IOException e) {
+            close();
+            throw new ConversionException("Failed to read XML file: " + e.getMessage(), e);
+        } catch (ConversionException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Leading whitespace is dropped, an XML declaration is only valid at the very start of the input.
+     */
+    private static InputStream skipLeadingWhitespace(InputStream input) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(input);
+        while (true) {
+            buffered.mark(1);
+            int b = buffered.read();
+            if (b == -1) {
+                throw new ConversionException("XML file content is empty");
+            }
+            if (b > ' ') {
+                buffered.reset();
+                return buffered;
+            }
+        }
+    }
+
+    @Override
+    protected Map<String, Object> fetch() {
+        if (finished) {
+            return null;
+        }
+        try {
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken token = parser.nextToken();
+                if (RECORDS.equals(field)) {
+                    recordsFound = true;
+                    document = null;
+                    if (token != JsonToken.START_OBJECT) {
+                        throw new ConversionException("Invalid XML format: records must contain elements");
+                    }
+                    return readObject();
+                }
+                if (recordsFound) {
+                    parser.skipChildren();
+                } else {
+                    putValue(document, field, readValue(token));
+                }
+            }
+            finished = true;
+            return recordsFound ? null : document;
+        } catch (IOException e) {
+            throw new ConversionException("Failed to read XML file: " + e.getMessage(), e);
+        }
+    }
+
+    private Map<String, Object> readObject() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        String field;
+        while ((field = parser.nextFieldName()) != null) {
+            putValue(map, field, readValue(parser.nextToken()));
+        }
+        return map;
+    }
+
+    private Object readValue(JsonToken token) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+                return readObject();
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                JsonToken item;
+                while ((item = parser.nextToken()) != JsonToken.END_ARRAY) {
+                    list.add(readValue(item));
+                }
+                return list;
+            case VALUE_NULL:
+                return null;
+            default:
+                return parser.getText();
+        }
+    }
+
+    /**
+     * Repeated elements are collected into a list, like Jackson does for duplicate XML properties.
+     */
+    @SuppressWarnings("unchecked")
+    private static void putValue(Map<String, Object> map, String field, Object value) {
+        if (!map.containsKey(field)) {
+            map.put(field, value);
+            return;
+        }
+        Object existing = map.get(field);
+        if (existing instanceof List<?> list) {
+            ((List<Object>) list).add(value);
+        } else {
+            List<Object> list = new ArrayList<>();
+            list.add(existing);
+            list.add(value);
+            map.put(field, list);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            parser.close();
+        } catch (IOException ignored) {
+            // nothing to do, the input is discarded anyway
+        }
+    }
+}
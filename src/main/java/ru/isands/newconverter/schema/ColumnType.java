@@ -0,0 +1,87 @@
+package ru.isands.newconverter.schema;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Type lattice used by schema inference.
+ * <pre>
+ *                         STRING
+ *        /        |          |           |      |
+ *    DOUBLE    BOOLEAN  TIMESTAMP_MICROS  UUID  NESTED   (records, arrays and maps)
+ *       |         |          |
+ *    DECIMAL      |   TIMESTAMP_MILLIS
+ *       |         |          |
+ *     LONG        |        DATE
+ *       |         |
+ *      INT        |
+ *         \      /
+ *           BIT          ("0" / "1", a number or a boolean)
+ *
+ *          EMPTY         (no non-blank value seen yet, below every type)
+ * </pre>
+ * Decimals keep their precision and scale and nested values their structure in {@link SchemaAccumulator}.
+ */
+public enum ColumnType {
+    EMPTY,
+    BIT,
+    INT,
+    LONG,
+    DECIMAL,
+    DOUBLE,
+    BOOLEAN,
+    DATE,
+    TIMESTAMP_MILLIS,
+    TIMESTAMP_MICROS,
+    UUID,
+    NESTED,
+    STRING;
+
+    public boolean isNumeric() {
+        return this == BIT || this == INT || this == LONG || this == DECIMAL || this == DOUBLE;
+    }
+
+    public boolean isTemporal() {
+        return this == DATE || this == TIMESTAMP_MILLIS || this == TIMESTAMP_MICROS;
+    }
+
+    /**
+     * Least upper bound of two types.
+     */
+    public ColumnType join(ColumnType other) {
+        if (this == other || other == EMPTY) return this;
+        if (this == EMPTY) return other;
+        if (this == STRING || other == STRING) return STRING;
+        if (this == BIT && (other.isNumeric() || other == BOOLEAN)) return other;
+        if (other == BIT && (isNumeric() || this == BOOLEAN)) return this;
+        if (isNumeric() && other.isNumeric() || isTemporal() && other.isTemporal()) {
+            return ordinal() > other.ordinal() ? this : other;
+        }
+        return STRING;
+    }
+
+    /**
+     * Narrowest type that can hold the given value.
+     */
+    public static ColumnType of(Object value) {
+        if (value == null) return EMPTY;
+        if (value instanceof String string) return ValueScanner.classify(string);
+        if (value instanceof Boolean) return BOOLEAN;
+        if (value instanceof Double || value instanceof Float) return DOUBLE;
+        if (value instanceof BigDecimal) return DECIMAL;
+        if (value instanceof BigInteger bigInteger) {
+            return bigInteger.bitLength() < Long.SIZE ? ofLong(bigInteger.longValue()) : DECIMAL;
+        }
+        if (value instanceof Number number) return ofLong(number.longValue());
+        if (value instanceof Map<?, ?> || value instanceof List<?>) return NESTED;
+        // Anything else is written as its string form
+        return STRING;
+    }
+
+    static ColumnType ofLong(long value) {
+        if (value == 0 || value == 1) return BIT;
+        return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE ? INT : LONG;
+    }
+}
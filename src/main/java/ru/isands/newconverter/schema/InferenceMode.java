@@ -0,0 +1,11 @@
+package ru.isands.newconverter.schema;
+
+/**
+ * How much of the input the first pass of a Parquet write looks at.
+ */
+public enum InferenceMode {
+    /** Scan every row. */
+    FULL,
+    /** Scan the first rows only and rescan everything if a later row does not fit. */
+    SAMPLE
+}
@@ -0,0 +1,81 @@
+package ru.isands.newconverter.schema;
+
+import org.apache.avro.Schema;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass schema inference: keeps one {@link ColumnType} per column and widens it row by row.
+ * Columns keep the order in which they were first seen.
+ */
+public class SchemaAccumulator {
+    private static final String RECORD_NAME = "Record";
+
+    private final Map<String, TypeNode> columns = new LinkedHashMap<>();
+    private final ValueScanner scanner = new ValueScanner();
+    private long rowCount;
+    private boolean complete = true;
+
+    public void accept(Map<String, Object> row) {
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            columns.computeIfAbsent(entry.getKey(), column -> new TypeNode()).accept(entry.getValue(), scanner);
+        }
+        rowCount++;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return {@code false} if inference stopped before the end of the input
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public void markIncomplete() {
+        this.complete = false;
+    }
+
+    /**
+     * @return the inferred columns except {@code names}, such as partition columns kept out of the files
+     */
+    public SchemaAccumulator without(Collection<String> names) {
+        SchemaAccumulator remaining = new SchemaAccumulator();
+        columns.forEach((column, type) -> {
+            if (!names.contains(column)) {
+                remaining.columns.put(column, type);
+            }
+        });
+        remaining.rowCount = rowCount;
+        remaining.complete = complete;
+        return remaining;
+    }
+
+    public Map<String, ColumnType> getColumnTypes() {
+        Map<String, ColumnType> columnTypes = new LinkedHashMap<>();
+        for (Map.Entry<String, TypeNode> column : columns.entrySet()) {
+            columnTypes.put(column.getKey(), column.getValue().getType());
+        }
+        return Collections.unmodifiableMap(columnTypes);
+    }
+
+    /**
+     * Every column is nullable; decimals, dates, timestamps and UUIDs carry Avro logical types,
+     * nested values become records, arrays and maps.
+     */
+    public Schema toSchema() {
+        List<Schema.Field> fields = new ArrayList<>();
+        for (Map.Entry<String, TypeNode> column : columns.entrySet()) {
+            Schema nullableSchema = TypeNode.nullable(column.getValue().toSchema(column.getKey(), RECORD_NAME));
+            fields.add(new Schema.Field(column.getKey(), nullableSchema, null, null));
+        }
+        return Schema.createRecord(RECORD_NAME, null, null, false, fields);
+    }
+}
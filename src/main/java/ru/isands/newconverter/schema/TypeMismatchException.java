@@ -0,0 +1,12 @@
+package ru.isands.newconverter.schema;
+
+/**
+ * Thrown when a value does not fit the inferred column type.
+ * Cheap to create: it is used for control flow when a sampled schema turns out to be too narrow.
+ */
+public class TypeMismatchException extends RuntimeException {
+
+    public TypeMismatchException() {
+        super("Value does not match the inferred column type", null, false, false);
+    }
+}
@@ -0,0 +1,251 @@
+package ru.isands.newconverter.schema;
+
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inferred type of a column or of a nested field: the {@link ColumnType}, the precision and scale of decimals
+ * and, for nested values, the structure. Objects whose keys are all valid Avro names become records,
+ * other objects become maps; lists become arrays. Conflicting structures fall back to strings.
+ */
+final class TypeNode {
+    private static final int MAX_DECIMAL_PRECISION = 38;
+    // Objects with more distinct keys than this are maps keyed by data rather than records
+    private static final int MAX_RECORD_FIELDS = 1000;
+
+    private ColumnType type = ColumnType.EMPTY;
+    private int integerDigits;
+    private int scale;
+    // Set for NESTED only, exactly one of them
+    private Map<String, TypeNode> fields;
+    private TypeNode element;
+    private TypeNode values;
+
+    ColumnType getType() {
+        return type;
+    }
+
+    void accept(Object value, ValueScanner scanner) {
+        if (value == null) {
+            return;
+        }
+        ColumnType valueType;
+        if (value instanceof String string) {
+            valueType = scanner.scan(string);
+            if (valueType == ColumnType.DECIMAL || valueType == ColumnType.BIT
+                    || valueType == ColumnType.INT || valueType == ColumnType.LONG) {
+                acceptDigits(scanner.getIntegerDigits(), scanner.getScale());
+            }
+        } else {
+            valueType = ColumnType.of(value);
+            if (valueType == ColumnType.DECIMAL || valueType == ColumnType.BIT
+                    || valueType == ColumnType.INT || valueType == ColumnType.LONG) {
+                BigDecimal decimal = toDecimal((Number) value);
+                acceptDigits(decimal.precision() - decimal.scale(), decimal.scale());
+            }
+        }
+        if (valueType == ColumnType.NESTED && (type == ColumnType.EMPTY || type == ColumnType.NESTED)) {
+            type = ColumnType.NESTED;
+            if (value instanceof Map<?, ?> map) {
+                acceptMap(map, scanner);
+            } else {
+                acceptList((List<?>) value, scanner);
+            }
+            return;
+        }
+        setType(type.join(valueType));
+    }
+
+    private static BigDecimal toDecimal(Number number) {
+        if (number instanceof BigDecimal decimal) {
+            return decimal.scale() < 0 ? decimal.setScale(0) : decimal;
+        }
+        if (number instanceof BigInteger integer) {
+            return new BigDecimal(integer);
+        }
+        return BigDecimal.valueOf(number.longValue());
+    }
+
+    private void acceptDigits(int integerDigits, int scale) {
+        this.integerDigits = Math.max(this.integerDigits, integerDigits);
+        this.scale = Math.max(this.scale, scale);
+    }
+
+    private void setType(ColumnType type) {
+        if (type == ColumnType.DECIMAL && integerDigits + scale > MAX_DECIMAL_PRECISION) {
+            type = ColumnType.DOUBLE;
+        }
+        if (type != ColumnType.NESTED) {
+            fields = null;
+            element = null;
+            values = null;
+        }
+        this.type = type;
+    }
+
+    private void acceptMap(Map<?, ?> map, ValueScanner scanner) {
+        if (element != null) {
+            setType(ColumnType.STRING);
+            return;
+        }
+        if (fields == null && values == null) {
+            fields = new LinkedHashMap<>();
+        }
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            if (fields != null && !fields.containsKey(key)
+                    && (!isValidName(key) || fields.size() >= MAX_RECORD_FIELDS)) {
+                toMap();
+            }
+            TypeNode node = fields != null ? fields.computeIfAbsent(key, name -> new TypeNode()) : values;
+            node.accept(entry.getValue(), scanner);
+        }
+    }
+
+    private void acceptList(List<?> list, ValueScanner scanner) {
+        if (fields != null || values != null) {
+            setType(ColumnType.STRING);
+            return;
+        }
+        if (element == null) {
+            element = new TypeNode();
+        }
+        for (Object item : list) {
+            element.accept(item, scanner);
+        }
+    }
+
+    private void toMap() {
+        values = new TypeNode();
+        for (TypeNode field : fields.values()) {
+            values.merge(field);
+        }
+        fields = null;
+    }
+
+    private void merge(TypeNode other) {
+        acceptDigits(other.integerDigits, other.scale);
+        if (type == ColumnType.EMPTY && other.type == ColumnType.NESTED) {
+            type = ColumnType.NESTED;
+        } else if (type != ColumnType.NESTED || other.type != ColumnType.NESTED) {
+            setType(type.join(other.type));
+            return;
+        }
+        if (other.element != null) {
+            if (fields != null || values != null) {
+                setType(ColumnType.STRING);
+                return;
+            }
+            if (element == null) {
+                element = new TypeNode();
+            }
+            element.merge(other.element);
+            return;
+        }
+        if (element != null) {
+            setType(ColumnType.STRING);
+            return;
+        }
+        if (fields == null && values == null) {
+            fields = new LinkedHashMap<>();
+        }
+        if (other.values != null && fields != null) {
+            toMap();
+        }
+        if (fields != null) {
+            for (Map.Entry<String, TypeNode> field : other.fields.entrySet()) {
+                fields.computeIfAbsent(field.getKey(), name -> new TypeNode()).merge(field.getValue());
+            }
+        } else if (other.values != null) {
+            values.merge(other.values);
+        } else {
+            for (TypeNode field : other.fields.values()) {
+                values.merge(field);
+            }
+        }
+    }
+
+    /**
+     * @param name      name of the column or field, used to name nested records
+     * @param namespace namespace of nested records, the path of the enclosing record
+     * @return non-null schema of the values
+     */
+    Schema toSchema(String name, String namespace) {
+        return switch (type) {
+            case EMPTY, STRING -> Schema.create(Schema.Type.STRING);
+            case BIT, INT -> Schema.create(Schema.Type.INT);
+            case LONG -> Schema.create(Schema.Type.LONG);
+            case DOUBLE -> Schema.create(Schema.Type.DOUBLE);
+            case BOOLEAN -> Schema.create(Schema.Type.BOOLEAN);
+            case DECIMAL -> LogicalTypes.decimal(Math.max(1, integerDigits + scale), scale)
+                    .addToSchema(Schema.create(Schema.Type.BYTES));
+            case DATE -> LogicalTypes.date().addToSchema(Schema.create(Schema.Type.INT));
+            case TIMESTAMP_MILLIS -> LogicalTypes.timestampMillis().addToSchema(Schema.create(Schema.Type.LONG));
+            case TIMESTAMP_MICROS -> LogicalTypes.timestampMicros().addToSchema(Schema.create(Schema.Type.LONG));
+            case UUID -> LogicalTypes.uuid().addToSchema(Schema.create(Schema.Type.STRING));
+            case NESTED -> toNestedSchema(name, namespace);
+        };
+    }
+
+    private Schema toNestedSchema(String name, String namespace) {
+        if (element != null) {
+            return Schema.createArray(nullable(element.toSchema(name, namespace)));
+        }
+        // Parquet has no empty groups, objects without keys are kept as maps
+        if (values != null || fields.isEmpty()) {
+            TypeNode valueType = values != null ? values : new TypeNode();
+            return Schema.createMap(nullable(valueType.toSchema(name, namespace)));
+        }
+        String recordName = toValidName(name);
+        String fullName = namespace != null ? namespace + "." + recordName : recordName;
+        List<Schema.Field> recordFields = new ArrayList<>();
+        for (Map.Entry<String, TypeNode> field : fields.entrySet()) {
+            Schema fieldSchema = nullable(field.getValue().toSchema(field.getKey(), fullName));
+            recordFields.add(new Schema.Field(field.getKey(), fieldSchema, null, null));
+        }
+        return Schema.createRecord(recordName, null, namespace, false, recordFields);
+    }
+
+    static Schema nullable(Schema schema) {
+        return Schema.createUnion(Arrays.asList(Schema.create(Schema.Type.NULL), schema));
+    }
+
+    private static boolean isValidName(String name) {
+        if (name.isEmpty() || !isNameStart(name.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++) {
+            if (!isNameStart(name.charAt(i)) && (name.charAt(i) < '0' || name.charAt(i) > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameStart(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+
+    private static String toValidName(String name) {
+        if (isValidName(name)) {
+            return name;
+        }
+        StringBuilder valid = new StringBuilder(name.length() + 1);
+        if (name.isEmpty() || !isNameStart(name.charAt(0))) {
+            valid.append('_');
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            valid.append(isNameStart(c) || c >= '0' && c <= '9' ? c : '_');
+        }
+        return valid.toString();
+    }
+}
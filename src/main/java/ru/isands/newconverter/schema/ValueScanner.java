@@ -0,0 +1,414 @@
+package ru.isands.newconverter.schema;
+
+import java.math.BigDecimal;
+
+/**
+ * Classifies and parses text values in place, without exceptions and without trimmed or lower-cased copies.
+ * Leading and trailing whitespace is ignored, like {@link String#trim()}.
+ * <p>
+ * Accepted forms:
+ * <ul>
+ *     <li>integers {@code [+-]?digits} that fit a long;</li>
+ *     <li>decimals {@code [+-]?digits.digits}, plain notation with a dot;</li>
+ *     <li>doubles {@code [+-]?digits[.digits][e[+-]digits][fFdD]} that contain an exponent or a suffix;</li>
+ *     <li>{@code true}/{@code false} in any case;</li>
+ *     <li>ISO dates {@code yyyy-MM-dd};</li>
+ *     <li>ISO timestamps {@code yyyy-MM-dd[T ]HH:mm[:ss[.fraction]][Z|+HH:mm]}, without an offset they are
+ *     taken as UTC; up to 3 fraction digits give millisecond, up to 6 microsecond precision;</li>
+ *     <li>UUIDs {@code 8-4-4-4-12} hex digits.</li>
+ * </ul>
+ * An instance keeps the value parsed by the last {@link #scan} call and is meant to be owned by a single thread.
+ */
+public final class ValueScanner {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // Mantissas below 2^53 convert to double exactly
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final long DAYS_0000_TO_1970 = 719_528;
+    private static final long MICROS_PER_SECOND = 1_000_000;
+
+    private long longValue;
+    private double doubleValue;
+    private boolean booleanValue;
+    private long unscaledValue;
+    private BigDecimal decimalValue;
+    private int integerDigits;
+    private int scale;
+
+    /**
+     * Narrowest type of the value, same as {@link ColumnType#of} for a string.
+     */
+    public static ColumnType classify(CharSequence value) {
+        return scan(value, null);
+    }
+
+    /**
+     * Classifies the value and keeps the parsed number, boolean or date for the getters.
+     */
+    public ColumnType scan(CharSequence value) {
+        return scan(value, this);
+    }
+
+    /**
+     * Value of the last scan: the number for {@link ColumnType#BIT}, {@link ColumnType#INT} and {@link ColumnType#LONG},
+     * the epoch day for {@link ColumnType#DATE}, epoch microseconds for both timestamp types.
+     */
+    public long getLong() {
+        return longValue;
+    }
+
+    /**
+     * Value of the last scan that returned a numeric type.
+     */
+    public double getDouble() {
+        return doubleValue;
+    }
+
+    /**
+     * Value of the last scan that returned {@link ColumnType#BOOLEAN}.
+     */
+    public boolean getBoolean() {
+        return booleanValue;
+    }
+
+    /**
+     * Exact value of the last scan that returned {@link ColumnType#DECIMAL} or an integer type.
+     */
+    public BigDecimal getDecimal() {
+        return decimalValue != null ? decimalValue : BigDecimal.valueOf(unscaledValue, scale);
+    }
+
+    /**
+     * Significant digits before the decimal point of the last decimal or integer.
+     */
+    public int getIntegerDigits() {
+        return integerDigits;
+    }
+
+    /**
+     * Digits after the decimal point of the last decimal, 0 for integers.
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    private static ColumnType scan(CharSequence value, ValueScanner target) {
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return ColumnType.EMPTY;
+        }
+        if (end - start == 36 && value.charAt(start + 8) == '-') {
+            return isUuid(value, start) ? ColumnType.UUID : ColumnType.STRING;
+        }
+        if (end - start >= 10 && value.charAt(start + 4) == '-' && digits(value, start, 4) >= 0) {
+            return scanTemporal(value, start, end, target);
+        }
+        char first = value.charAt(start);
+        if (first == 't' || first == 'T' || first == 'f' || first == 'F') {
+            return scanBoolean(value, start, end, target);
+        }
+        return scanNumber(value, start, end, target);
+    }
+
+    private static ColumnType scanBoolean(CharSequence value, int start, int end, ValueScanner target) {
+        boolean result;
+        if (regionMatchesIgnoreCase(value, start, end, "true")) {
+            result = true;
+        } else if (regionMatchesIgnoreCase(value, start, end, "false")) {
+            result = false;
+        } else {
+            return ColumnType.STRING;
+        }
+        if (target != null) {
+            target.booleanValue = result;
+        }
+        return ColumnType.BOOLEAN;
+    }
+
+    private static boolean regionMatchesIgnoreCase(CharSequence value, int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            // expected is lower-case ASCII, the 0x20 bit folds ASCII letters
+            if ((value.charAt(start + i) | 0x20) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ColumnType scanNumber(CharSequence value, int start, int end, ValueScanner target) {
+        int i = start;
+        boolean negative = false;
+        char c = value.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            i++;
+        }
+        // Integer part; accumulated as a negative number so that Long.MIN_VALUE fits
+        long integer = 0;
+        boolean overflow = false;
+        int digits = 0;
+        for (; i < end && (c = value.charAt(i)) >= '0' && c <= '9'; i++, digits++) {
+            int digit = c - '0';
+            if (integer < (Long.MIN_VALUE + digit) / 10) {
+                overflow = true;
+            }
+            integer = integer * 10 - digit;
+        }
+        if (i == end) {
+            if (digits == 0 || overflow || (!negative && integer == Long.MIN_VALUE)) {
+                // Integers beyond the long range are not read as decimals either
+                return ColumnType.STRING;
+            }
+            long result = negative ? integer : -integer;
+            if (target != null) {
+                target.longValue = result;
+                target.doubleValue = result;
+                target.unscaledValue = result;
+                target.decimalValue = null;
+                int integerDigits = 1;
+                for (long rest = result; rest <= -10 || rest >= 10; rest /= 10) {
+                    integerDigits++;
+                }
+                target.integerDigits = integerDigits;
+                target.scale = 0;
+            }
+            return ColumnType.ofLong(result);
+        }
+        return scanDecimal(value, start, end, target);
+    }
+
+    /**
+     * Validates a decimal and computes it exactly when the significant digits and the exponent are small enough,
+     * which covers almost all real data; other values are handed to {@link Double#parseDouble} once validated.
+     */
+    private static ColumnType scanDecimal(CharSequence value, int start, int end, ValueScanner target) {
+        int i = start;
+        char c = value.charAt(i);
+        boolean negative = c == '-';
+        if (c == '-' || c == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean exact = true;
+        for (; i < end && (c = value.charAt(i)) >= '0' && c <= '9'; i++, digits++) {
+            if (mantissa != 0 || c != '0') {
+                significantDigits++;
+            }
+            mantissa = mantissa * 10 + (c - '0');
+            exact &= significantDigits <= 18;
+        }
+        int integerDigits = significantDigits;
+        boolean hasPoint = false;
+        if (i < end && value.charAt(i) == '.') {
+            hasPoint = true;
+            for (i++; i < end && (c = value.charAt(i)) >= '0' && c <= '9'; i++, digits++) {
+                if (mantissa != 0 || c != '0') {
+                    significantDigits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                exact &= significantDigits <= 18;
+                scale++;
+            }
+        }
+        if (digits == 0) {
+            return ColumnType.STRING;
+        }
+        int exponent = 0;
+        boolean hasExponent = false;
+        if (i < end && (value.charAt(i) == 'e' || value.charAt(i) == 'E')) {
+            hasExponent = true;
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+                negativeExponent = value.charAt(i) == '-';
+                i++;
+            }
+            int exponentDigits = 0;
+            for (; i < end && (c = value.charAt(i)) >= '0' && c <= '9'; i++, exponentDigits++) {
+                if (exponent < 100_000) {
+                    exponent = exponent * 10 + (c - '0');
+                }
+            }
+            if (exponentDigits == 0) {
+                return ColumnType.STRING;
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        boolean hasSuffix = false;
+        if (i < end && "fFdD".indexOf(value.charAt(i)) >= 0) {
+            hasSuffix = true;
+            i++;
+        }
+        if (i != end || !hasPoint && !hasExponent) {
+            return ColumnType.STRING;
+        }
+        ColumnType type = hasExponent || hasSuffix ? ColumnType.DOUBLE : ColumnType.DECIMAL;
+        if (target != null) {
+            int power = exponent - scale;
+            double result;
+            if (exact && mantissa < MAX_EXACT_MANTISSA && power >= -22 && power <= 22) {
+                result = power < 0 ? mantissa / POWERS_OF_TEN[-power] : mantissa * POWERS_OF_TEN[power];
+                if (negative) {
+                    result = -result;
+                }
+            } else {
+                result = Double.parseDouble(value.subSequence(start, end).toString());
+            }
+            target.doubleValue = result;
+            if (type == ColumnType.DECIMAL) {
+                target.integerDigits = integerDigits;
+                target.scale = scale;
+                target.unscaledValue = negative ? -mantissa : mantissa;
+                target.decimalValue = exact ? null : new BigDecimal(value.subSequence(start, end).toString());
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Dates and timestamps; anything that starts like a date but is not one is a string.
+     */
+    private static ColumnType scanTemporal(CharSequence value, int start, int end, ValueScanner target) {
+        int year = digits(value, start, 4);
+        int month = value.charAt(start + 7) == '-' ? digits(value, start + 5, 2) : -1;
+        int day = digits(value, start + 8, 2);
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return ColumnType.STRING;
+        }
+        long epochDay = epochDay(year, month, day);
+        int i = start + 10;
+        if (i == end) {
+            if (target != null) {
+                target.longValue = epochDay;
+            }
+            return ColumnType.DATE;
+        }
+        char separator = value.charAt(i);
+        if (separator != 'T' && separator != 't' && separator != ' ' || end - i < 6 || value.charAt(i + 3) != ':') {
+            return ColumnType.STRING;
+        }
+        int hour = digits(value, i + 1, 2);
+        int minute = digits(value, i + 4, 2);
+        int second = 0;
+        i += 6;
+        if (i < end && value.charAt(i) == ':') {
+            second = end - i >= 3 ? digits(value, i + 1, 2) : -1;
+            i += 3;
+        }
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return ColumnType.STRING;
+        }
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < end && (value.charAt(i) == '.' || value.charAt(i) == ',')) {
+            char c;
+            for (i++; i < end && (c = value.charAt(i)) >= '0' && c <= '9'; i++, fractionDigits++) {
+                fraction = fraction * 10 + (c - '0');
+            }
+            if (fractionDigits == 0 || fractionDigits > 6) {
+                return ColumnType.STRING;
+            }
+        }
+        int offsetSeconds = 0;
+        if (i < end) {
+            char zone = value.charAt(i);
+            if ((zone == 'Z' || zone == 'z') && i + 1 == end) {
+                i++;
+            } else if (zone == '+' || zone == '-') {
+                int offsetHours = end - i >= 3 ? digits(value, i + 1, 2) : -1;
+                int offsetMinutes = 0;
+                if (end - i == 6 && value.charAt(i + 3) == ':') {
+                    offsetMinutes = digits(value, i + 4, 2);
+                } else if (end - i == 5) {
+                    offsetMinutes = digits(value, i + 3, 2);
+                } else if (end - i != 3) {
+                    return ColumnType.STRING;
+                }
+                if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+                    return ColumnType.STRING;
+                }
+                offsetSeconds = (zone == '-' ? -1 : 1) * (offsetHours * 3600 + offsetMinutes * 60);
+                i = end;
+            }
+        }
+        if (i != end) {
+            return ColumnType.STRING;
+        }
+        if (target != null) {
+            long seconds = epochDay * 86_400 + hour * 3600L + minute * 60L + second - offsetSeconds;
+            long micros = fraction;
+            for (int digit = fractionDigits; digit < 6; digit++) {
+                micros *= 10;
+            }
+            target.longValue = seconds * MICROS_PER_SECOND + micros;
+        }
+        return fractionDigits > 3 ? ColumnType.TIMESTAMP_MICROS : ColumnType.TIMESTAMP_MILLIS;
+    }
+
+    /**
+     * @return value of {@code count} ASCII digits at {@code start}, -1 if any of them is not a digit
+     */
+    private static int digits(CharSequence value, int start, int count) {
+        int result = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> isLeapYear(year) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Same as {@link java.time.LocalDate#toEpochDay()} for years 0 to 9999.
+     */
+    private static long epochDay(int year, int month, int day) {
+        long total = 365L * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        total += (367 * month - 362) / 12 + day - 1;
+        if (month > 2) {
+            total -= isLeapYear(year) ? 1 : 2;
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    private static boolean isUuid(CharSequence value, int start) {
+        for (int i = 0; i < 36; i++) {
+            char c = value.charAt(start + i);
+            boolean dash = i == 8 || i == 13 || i == 18 || i == 23;
+            if (dash ? c != '-' : Character.digit(c, 16) < 0 || c > 'f') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
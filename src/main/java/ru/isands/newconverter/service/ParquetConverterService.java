@@ -1,46 +1,257 @@
 package ru.isands.newconverter.service;
 
-import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.isands.newconverter.cache.ResultCache;
 import ru.isands.newconverter.enums.Format;
 import ru.isands.newconverter.exception.ConversionException;
+import ru.isands.newconverter.memory.MemoryGovernor;
+import ru.isands.newconverter.memory.MemoryGrant;
+import ru.isands.newconverter.metrics.ConversionMetrics;
+import ru.isands.newconverter.metrics.MeteredConversion;
+import ru.isands.newconverter.metrics.Stage;
+import ru.isands.newconverter.parquet.DatasetLayout;
+import ru.isands.newconverter.parquet.MultipartInputFile;
+import ru.isands.newconverter.parquet.ParquetDataset;
+import ru.isands.newconverter.parquet.ParquetQuery;
+import ru.isands.newconverter.parquet.ParquetSchema;
+import ru.isands.newconverter.parquet.ParquetWriteOptions;
+import ru.isands.newconverter.parquet.SpillOutputFile;
+import ru.isands.newconverter.pipeline.RowSource;
 import ru.isands.newconverter.utils.ReadUtil;
 import ru.isands.newconverter.utils.WriteUtil;
 
-import java.util.*;
+import java.io.OutputStream;
+import java.util.function.BiConsumer;
 
 @Service
 public class ParquetConverterService {
     private final ReadUtil readUtil;
     private final WriteUtil writeUtil;
-    public ParquetConverterService(ReadUtil readUtil, WriteUtil writeUtil) {
+    private final ResultCache resultCache;
+    private final ConversionMetrics conversionMetrics;
+    private final MemoryGovernor memoryGovernor;
+    public ParquetConverterService(ReadUtil readUtil, WriteUtil writeUtil, ResultCache resultCache,
+                                   ConversionMetrics conversionMetrics, MemoryGovernor memoryGovernor) {
         this.readUtil = readUtil;
         this.writeUtil = writeUtil;
+        this.resultCache = resultCache;
+        this.conversionMetrics = conversionMetrics;
+        this.memoryGovernor = memoryGovernor;
     }
-    public Resource convertJson(MultipartFile inputFile, Format inputFormat) {
-        List<Map<String, Object>> data = readData(inputFile, inputFormat);
-        return writeUtil.writeToJson(data);
+    /**
+     * Converts between any two formats; {@code query} applies to Parquet input, {@code options} to Parquet output.
+     */
+    public StreamingResponseBody convert(MultipartFile inputFile, Format inputFormat, Format targetFormat,
+                                         ParquetQuery query, ParquetWriteOptions options) {
+        return switch (targetFormat) {
+            case PARQUET -> convertParquet(inputFile, inputFormat, query, options);
+            case CSV -> convertCsv(inputFile, inputFormat, query);
+            case JSON -> convertJson(inputFile, inputFormat, query);
+            case NDJSON -> convertNdjson(inputFile, inputFormat, query);
+            case XML -> convertXml(inputFile, inputFormat, query);
+            case ARROW, ARROW_STREAM -> convertArrow(inputFile, inputFormat, query, targetFormat == Format.ARROW);
+        };
+    }
+    public StreamingResponseBody convertJson(MultipartFile inputFile, Format inputFormat, ParquetQuery query) {
+        return resultCache.get(inputFile, inputFormat, Format.JSON, String.valueOf(query),
+                () -> stream(inputFile, inputFormat, query, Format.JSON, writeUtil::writeToJson));
+    }
+    public StreamingResponseBody convertNdjson(MultipartFile inputFile, Format inputFormat, ParquetQuery query) {
+        return resultCache.get(inputFile, inputFormat, Format.NDJSON, String.valueOf(query),
+                () -> stream(inputFile, inputFormat, query, Format.NDJSON, writeUtil::writeToNdjson));
+    }
+    public StreamingResponseBody convertCsv(MultipartFile inputFile, Format inputFormat, ParquetQuery query) {
+        return resultCache.get(inputFile, inputFormat, Format.CSV, String.valueOf(query),
+                () -> stream(inputFile, inputFormat, query, Format.CSV, writeUtil::writeToCsv));
+    }
+    public StreamingResponseBody convertXml(MultipartFile inputFile, Format inputFormat, ParquetQuery query) {
+        return resultCache.get(inputFile, inputFormat, Format.XML, String.valueOf(query),
+                () -> stream(inputFile, inputFormat, query, Format.XML, writeUtil::writeToXml));
+    }
+    public StreamingResponseBody convertParquet(MultipartFile inputFile, Format inputFormat, ParquetWriteOptions options) {
+        return convertParquet(inputFile, inputFormat, null, options);
+    }
+    public StreamingResponseBody convertParquet(MultipartFile inputFile, Format inputFormat, ParquetQuery query,
+                                                ParquetWriteOptions options) {
+        return resultCache.get(inputFile, inputFormat, Format.PARQUET, query + ", " + options, () -> {
+            MeteredConversion conversion = start(inputFile, inputFormat, Format.PARQUET);
+            SpillOutputFile result;
+            try {
+                // Parquet needs the schema up front, so the writer scans the input twice and the file is
+                // complete before the first byte is sent
+                result = writeUtil.writeToParquet(
+                        () -> conversion.meter(readData(inputFile, inputFormat, query)), options, conversion);
+            } catch (RuntimeException e) {
+                conversion.finish(false);
+                throw e;
+            }
+            return out -> {
+                boolean success = false;
+                try (result) {
+                    long start = System.nanoTime();
+                    result.transferTo(conversion.meter(out));
+                    conversion.record(Stage.TRANSFER, System.nanoTime() - start);
+                    success = true;
+                } finally {
+                    conversion.finish(success);
+                }
+            };
+        });
+    }
+
+    /**
+     * Appends the rows of {@code inputFile} to the Parquet file {@code parquetFile}: its row groups are copied
+     * without decoding and only the new rows are encoded, into row groups of their own.
+     */
+    public StreamingResponseBody appendParquet(MultipartFile parquetFile, MultipartFile inputFile, Format inputFormat,
+                                               ParquetWriteOptions options) {
+        if (parquetFile.isEmpty()) {
+            throw new ConversionException("Uploaded Parquet file is empty");
+        }
+        // Two inputs do not fit the result cache, appends are not cached
+        MeteredConversion conversion = start(inputFile, inputFormat, Format.PARQUET);
+        conversion.setBytesIn(inputFile.getSize() + parquetFile.getSize());
+        MultipartInputFile existing = new MultipartInputFile(parquetFile);
+        SpillOutputFile appended;
+        try {
+            appended = writeUtil.writeAppendedRows(existing,
+                    () -> conversion.meter(readData(inputFile, inputFormat, null)), options, conversion);
+        } catch (RuntimeException e) {
+            conversion.finish(false);
+            throw e;
+        }
+        return out -> {
+            boolean success = false;
+            try (appended) {
+                long start = System.nanoTime();
+                writeUtil.mergeParquet(existing, appended, conversion.meter(out));
+                conversion.record(Stage.TRANSFER, System.nanoTime() - start);
+                success = true;
+            } finally {
+                conversion.finish(success);
+            }
+        };
+    }
+
+    /**
+     * @param fileFormat write the Arrow IPC file format rather than the stream format
+     */
+    public StreamingResponseBody convertArrow(MultipartFile inputFile, Format inputFormat, ParquetQuery query,
+                                              boolean fileFormat) {
+        Format targetFormat = fileFormat ? Format.ARROW : Format.ARROW_STREAM;
+        return resultCache.get(inputFile, inputFormat, targetFormat, String.valueOf(query), () -> {
+            MeteredConversion conversion = start(inputFile, inputFormat, targetFormat);
+            ParquetSchema schema;
+            try {
+                // The schema goes first in Arrow IPC, so it is inferred before the response is committed
+                // and the record batches are then written straight to the response
+                schema = conversion.time(Stage.INFER, () -> writeUtil.inferArrowSchema(
+                        () -> conversion.meter(readData(inputFile, inputFormat, query))));
+            } catch (RuntimeException e) {
+                conversion.finish(false);
+                throw e;
+            }
+            return out -> {
+                boolean success = false;
+                try {
+                    long start = System.nanoTime();
+                    try (RowSource rows = conversion.meter(readData(inputFile, inputFormat, query))) {
+                        writeUtil.writeToArrow(rows, schema, conversion.meter(out), fileFormat);
+                    }
+                    conversion.record(Stage.WRITE, System.nanoTime() - start);
+                    success = true;
+                } finally {
+                    conversion.finish(success);
+                }
+            };
+        });
     }
-    public Resource convertCsv(MultipartFile inputFile, Format inputFormat) {
-        List<Map<String, Object>> data = readData(inputFile, inputFormat);
-        return writeUtil.writeToCsv(data);
+
+    /**
+     * Writes a partitioned or size-split Parquet dataset and sends it as a ZIP archive with a manifest.
+     */
+    public StreamingResponseBody convertDataset(MultipartFile inputFile, Format inputFormat, ParquetQuery query,
+                                                DatasetLayout layout, ParquetWriteOptions options) {
+        return resultCache.get(inputFile, inputFormat, Format.PARQUET, layout + ", " + query + ", " + options, () -> {
+            MeteredConversion conversion = start(inputFile, inputFormat, Format.PARQUET);
+            ParquetDataset result;
+            try {
+                result = writeUtil.writeToParquetDataset(
+                        () -> conversion.meter(readData(inputFile, inputFormat, query)), layout, options, conversion);
+            } catch (RuntimeException e) {
+                conversion.finish(false);
+                throw e;
+            }
+            return out -> {
+                boolean success = false;
+                try (result) {
+                    long start = System.nanoTime();
+                    result.transferTo(conversion.meter(out));
+                    conversion.record(Stage.TRANSFER, System.nanoTime() - start);
+                    success = true;
+                } finally {
+                    conversion.finish(success);
+                }
+            };
+        });
     }
-    public Resource convertXml(MultipartFile inputFile, Format inputFormat) {
-        List<Map<String, Object>> data = readData(inputFile, inputFormat);
-        return writeUtil.writeToXml(data);
+
+    /**
+     * Checks the input before the response is committed, so empty or unreadable input is still
+     * reported as a 400. Rows are then written straight to the response as they are read.
+     */
+    private StreamingResponseBody stream(MultipartFile inputFile, Format inputFormat, ParquetQuery query,
+                                         Format targetFormat, BiConsumer<RowSource, OutputStream> writer) {
+        MeteredConversion conversion = start(inputFile, inputFormat, targetFormat);
+        RowSource data = null;
+        try {
+            data = conversion.meter(readData(inputFile, inputFormat, query));
+            if (!data.hasNext()) {
+                throw new ConversionException("Cannot write empty data to " + targetFormat);
+            }
+        } catch (RuntimeException e) {
+            if (data != null) {
+                data.close();
+            }
+            conversion.finish(false);
+            throw e;
+        }
+        RowSource rows = data;
+        return out -> {
+            boolean success = false;
+            try {
+                long start = System.nanoTime();
+                try (rows) {
+                    writer.accept(rows, conversion.meter(out));
+                }
+                conversion.record(Stage.WRITE, System.nanoTime() - start);
+                success = true;
+            } finally {
+                conversion.finish(success);
+            }
+        };
     }
-    public Resource convertParquet(MultipartFile inputFile, Format inputFormat) {
-        List<Map<String, Object>> data = readData(inputFile, inputFormat);
-        return writeUtil.writeToParquet(data);
+
+    /**
+     * Waits until the conversion fits into the memory budget; the reservation is released when it finishes.
+     */
+    private MeteredConversion start(MultipartFile inputFile, Format inputFormat, Format targetFormat) {
+        MemoryGrant memory = memoryGovernor.admit(inputFile.getSize(), inputFormat, targetFormat);
+        MeteredConversion conversion = conversionMetrics.start(inputFormat, targetFormat);
+        conversion.setBytesIn(inputFile.getSize());
+        conversion.hold(memory);
+        return conversion;
     }
 
-    private List<Map<String, Object>> readData(MultipartFile file, Format format) {
+    private RowSource readData(MultipartFile file, Format format, ParquetQuery query) {
         return switch (format) {
-            case PARQUET -> readUtil.readParquet(file);
+            case PARQUET -> readUtil.readParquet(file, query);
             case CSV -> readUtil.readCsv(file);
-            case JSON -> readUtil.readJson(file);
+            case JSON, NDJSON -> readUtil.readJson(file);
             case XML -> readUtil.readXml(file);
+            case ARROW, ARROW_STREAM -> readUtil.readArrow(file);
         };
     }
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package ru.isands.newconverter.utils;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.isands.newconverter.enums.Compression;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compressed uploads are recognized by their magic bytes and decompressed while the reader consumes them;
+ * responses are compressed while they stream. Nothing is decompressed or compressed to disk first.
+ */
+@Component
+public class CompressionUtil {
+    private static final byte[] GZIP_MAGIC = {0x1f, (byte) 0x8b};
+    private static final byte[] ZSTD_MAGIC = {0x28, (byte) 0xb5, 0x2f, (byte) 0xfd};
+    private static final byte[] BZIP2_MAGIC = {'B', 'Z', 'h'};
+    // After "BZh" and the block size digit comes the magic of the first block, or of the end of an empty stream
+    private static final byte[] BZIP2_BLOCK_MAGIC = {0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+    private static final byte[] BZIP2_END_MAGIC = {0x17, 0x72, 0x45, 0x38, 0x50, (byte) 0x90};
+    private static final int MAGIC_LENGTH = BZIP2_MAGIC.length + 1 + BZIP2_BLOCK_MAGIC.length;
+    // Content codings offered on Accept-Encoding, in order of preference at equal weights
+    private static final List<Compression> CONTENT_CODINGS = List.of(Compression.ZSTD, Compression.GZIP);
+
+    @Value("${app.compression.negotiate:true}")
+    private boolean negotiate;
+    @Value("${app.compression.gzip-level:6}")
+    private int gzipLevel;
+    @Value("${app.compression.zstd-level:3}")
+    private int zstdLevel;
+
+    /**
+     * Peeks at the first bytes of {@code in}, which must support {@link InputStream#mark(int)}.
+     */
+    public static Compression detect(InputStream in) throws IOException {
+        in.mark(MAGIC_LENGTH);
+        byte[] head = in.readNBytes(MAGIC_LENGTH);
+        in.reset();
+        if (startsWith(head, 0, GZIP_MAGIC)) {
+            return Compression.GZIP;
+        }
+        if (startsWith(head, 0, ZSTD_MAGIC)) {
+            return Compression.ZSTD;
+        }
+        if (startsWith(head, 0, BZIP2_MAGIC) && head.length == MAGIC_LENGTH
+                && head[BZIP2_MAGIC.length] >= '1' && head[BZIP2_MAGIC.length] <= '9'
+                && (startsWith(head, BZIP2_MAGIC.length + 1, BZIP2_BLOCK_MAGIC)
+                || startsWith(head, BZIP2_MAGIC.length + 1, BZIP2_END_MAGIC))) {
+            return Compression.BZIP2;
+        }
+        return Compression.NONE;
+    }
+
+    private static boolean startsWith(byte[] head, int offset, byte[] magic) {
+        return head.length >= offset + magic.length
+                && Arrays.equals(head, offset, offset + magic.length, magic, 0, magic.length);
+    }
+
+    /**
+     * @return {@code in} decompressed on the fly if it is gzip, zstd or bzip2, as it is otherwise
+     */
+    public InputStream decompress(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        return switch (detect(buffered)) {
+            case NONE -> buffered;
+            // Concatenated members and streams, as written by parallel compressors, are read to the end
+            case GZIP -> new GzipCompressorInputStream(buffered, true);
+            case ZSTD -> new ZstdCompressorInputStream(buffered);
+            case BZIP2 -> new BZip2CompressorInputStream(buffered, true);
+        };
+    }
+
+    public OutputStream compress(OutputStream out, Compression compression) throws IOException {
+        return switch (compression) {
+            case NONE -> out;
+            case GZIP -> {
+                GzipParameters parameters = new GzipParameters();
+                parameters.setCompressionLevel(gzipLevel);
+                yield new GzipCompressorOutputStream(out, parameters);
+            }
+            case ZSTD -> new ZstdCompressorOutputStream(out, zstdLevel);
+            case BZIP2 -> new BZip2CompressorOutputStream(out);
+        };
+    }
+
+    public StreamingResponseBody compress(StreamingResponseBody body, Compression compression) {
+        if (compression == Compression.NONE) {
+            return body;
+        }
+        return out -> {
+            try (OutputStream compressed = compress(CloseShieldOutputStream.wrap(out), compression)) {
+                body.writeTo(CloseShieldOutputStream.wrap(compressed));
+            }
+        };
+    }
+
+    /**
+     * @return the supported content coding with the highest weight in {@code acceptEncoding}, {@link Compression#NONE}
+     * if there is none or negotiation is turned off by {@code app.compression.negotiate}
+     */
+    public Compression negotiate(String acceptEncoding) {
+        if (!negotiate || acceptEncoding == null || acceptEncoding.isBlank()) {
+            return Compression.NONE;
+        }
+        Map<String, Double> weights = new HashMap<>();
+        for (String element : acceptEncoding.split(",")) {
+            String[] parameters = element.split(";");
+            double weight = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        weight = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        weight = 0;
+                    }
+                }
+            }
+            weights.put(parameters[0].trim().toLowerCase(Locale.ROOT), weight);
+        }
+        Compression best = Compression.NONE;
+        double bestWeight = 0;
+        for (Compression coding : CONTENT_CODINGS) {
+            double weight = weights.getOrDefault(coding.getContentCoding(), weights.getOrDefault("*", 0.0));
+            if (weight > bestWeight) {
+                best = coding;
+                bestWeight = weight;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Builds a file download. With an explicit {@code compression} the file itself is compressed and named
+     * accordingly; without one the response is compressed with the coding negotiated from {@code acceptEncoding}
+     * and sent with {@code Content-Encoding}, if {@code negotiable}.
+     *
+     * @param compression {@code null} to negotiate, {@link Compression#NONE} to send the file as it is
+     */
+    public ResponseEntity<StreamingResponseBody> respond(StreamingResponseBody body, String fileName, MediaType mediaType,
+                                                         Compression compression, String acceptEncoding,
+                                                         boolean negotiable) {
+        if (compression != null && compression != Compression.NONE) {
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName + compression.getSuffix())
+                    .contentType(MediaType.parseMediaType(compression.getMediaType()))
+                    .body(compress(body, compression));
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName)
+                .contentType(mediaType);
+        if (compression != null || !negotiable || !negotiate) {
+            return response.body(body);
+        }
+        Compression coding = negotiate(acceptEncoding);
+        response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (coding != Compression.NONE) {
+            response.header(HttpHeaders.CONTENT_ENCODING, coding.getContentCoding());
+        }
+        return response.body(compress(body, coding));
+    }
+}
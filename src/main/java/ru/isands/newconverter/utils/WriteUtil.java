@@ -1,27 +1,64 @@
 package ru.isands.newconverter.utils;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
 import com.opencsv.CSVWriter;
+import org.apache.avro.LogicalTypes;
 import org.apache.avro.Schema;
+import org.apache.commons.io.output.CloseShieldOutputStream;
 import org.apache.avro.generic.GenericData;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.hadoop.ParquetFileWriter;
 import org.apache.parquet.hadoop.ParquetWriter;
-import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.stereotype.Component;
-import ru.isands.newconverter.enums.Format;
+import org.springframework.util.unit.DataSize;
+import ru.isands.newconverter.arrow.ArrowBatchWriter;
 import ru.isands.newconverter.exception.ConversionException;
+import ru.isands.newconverter.metrics.MeteredConversion;
+import ru.isands.newconverter.metrics.Stage;
+import ru.isands.newconverter.parquet.AvroValues;
+import ru.isands.newconverter.parquet.BatchParquetWriter;
+import ru.isands.newconverter.parquet.BatchRow;
+import ru.isands.newconverter.parquet.BatchSink;
+import ru.isands.newconverter.parquet.DatasetLayout;
+import ru.isands.newconverter.parquet.ParquetDataset;
+import ru.isands.newconverter.parquet.ParquetDatasetWriter;
+import ru.isands.newconverter.parquet.ParquetFileMerger;
+import ru.isands.newconverter.parquet.ParquetSchema;
+import ru.isands.newconverter.parquet.ParquetSchemaCache;
+import ru.isands.newconverter.parquet.ParquetWriteOptions;
+import ru.isands.newconverter.parquet.ParquetWriterMode;
+import ru.isands.newconverter.parquet.SpillOutputFile;
+import ru.isands.newconverter.parquet.StreamOutputFile;
+import ru.isands.newconverter.pipeline.BatchBuffer;
+import ru.isands.newconverter.pipeline.ConversionPool;
+import ru.isands.newconverter.pipeline.RecordBatch;
+import ru.isands.newconverter.pipeline.RowSource;
+import ru.isands.newconverter.pipeline.RowSourceProvider;
+import ru.isands.newconverter.schema.ColumnType;
+import ru.isands.newconverter.schema.InferenceMode;
+import ru.isands.newconverter.schema.SchemaAccumulator;
+import ru.isands.newconverter.schema.TypeMismatchException;
 
+import javax.xml.namespace.QName;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author batal
@@ -31,311 +68,520 @@ import java.util.*;
 public class WriteUtil {
     @Value("${app.temp-dir}")
     private String tempDir;
+    @Value("${app.inference.mode:full}")
+    private InferenceMode inferenceMode;
+    @Value("${app.inference.sample-size:10000}")
+    private long sampleSize;
+    @Value("${app.batch-size:4096}")
+    private int batchSize;
+    @Value("${app.parquet.spill-threshold:16MB}")
+    private DataSize spillThreshold;
+    @Value("${app.parquet.parallelism:1}")
+    private int parquetParallelism;
+    @Value("${app.parquet.segment-rows:262144}")
+    private long segmentRows;
+    @Value("${app.parquet.writer:direct}")
+    private ParquetWriterMode parquetWriterMode;
+    @Value("${app.dataset.max-open-writers:32}")
+    private int datasetMaxOpenWriters;
+    @Value("${app.dataset.memory-budget:256MB}")
+    private DataSize datasetMemoryBudget;
+    @Value("${app.dataset.max-files:10000}")
+    private int datasetMaxFiles;
     private final ObjectMapper jsonMapper = new ObjectMapper();
     private final XmlMapper xmlMapper = new XmlMapper();
+    // Rows are flushed by the response buffer, not one by one; decimals keep their scale, without exponents
+    private final ObjectWriter jsonArrayWriter = jsonMapper.writer(SerializationFeature.INDENT_OUTPUT)
+            .with(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    private final ObjectWriter xmlWriter = xmlMapper.writer(SerializationFeature.INDENT_OUTPUT)
+            .with(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    private final ObjectWriter ndjsonWriter = jsonMapper.writer()
+            .withRootValueSeparator("\n")
+            .with(JsonGenerator.Feature.WRITE_BIGDECIMAL_AS_PLAIN)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    private final ParquetWriteOptions parquetDefaults;
+    private final ConversionPool conversionPool;
+    private final ParquetSchemaCache schemaCache;
 
-    public Resource writeToParquet(List<Map<String, Object>> data) {
-        if (data == null || data.isEmpty()) {
-            throw new ConversionException("Cannot write empty data to Parquet");
+    public WriteUtil(ParquetWriteOptions parquetDefaults, ConversionPool conversionPool, ParquetSchemaCache schemaCache) {
+        this.parquetDefaults = parquetDefaults;
+        this.conversionPool = conversionPool;
+        this.schemaCache = schemaCache;
+    }
+
+    /**
+     * @param overrides  per-request writer options, {@code null} to use the configured defaults
+     * @param conversion receives the time of the inference and encoding passes; its memory share bounds the
+     *                   row group size and the rows buffered for parallel encoding
+     */
+    public SpillOutputFile writeToParquet(RowSourceProvider source, ParquetWriteOptions overrides,
+                                          MeteredConversion conversion) {
+        long memoryShare = conversion.getMemoryShare();
+        // A row group is buffered whole until it is flushed, the flushed ones go to the spill file
+        ParquetWriteOptions options = parquetDefaults.overrideWith(overrides).withRowGroupSizeAtMost(memoryShare);
+        long rowLimit = inferenceMode == InferenceMode.SAMPLE ? sampleSize : Long.MAX_VALUE;
+        SchemaAccumulator columns = conversion.time(Stage.INFER, () -> inferColumns(source, rowLimit));
+        try {
+            return conversion.time(Stage.ENCODE, () -> writeParquetFile(source, columns, options, memoryShare));
+        } catch (TypeMismatchException e) {
+            // The sample did not cover every value, fall back to a full scan
+            SchemaAccumulator allColumns = conversion.time(Stage.INFER, () -> inferColumns(source, Long.MAX_VALUE));
+            return conversion.time(Stage.ENCODE, () -> writeParquetFile(source, allColumns, options, memoryShare));
         }
-        
-        File tempFile = null;
+    }
+
+    /**
+     * Writes new rows for {@link #mergeParquet} with the schema of an existing Parquet file. A column of the new
+     * rows may be narrower than the existing one, such as INT values for a LONG column, but not wider; columns
+     * the new rows lack are written as nulls.
+     */
+    public SpillOutputFile writeAppendedRows(InputFile existing, RowSourceProvider source, ParquetWriteOptions overrides,
+                                             MeteredConversion conversion) {
+        long memoryShare = conversion.getMemoryShare();
+        ParquetWriteOptions options = parquetDefaults.overrideWith(overrides).withRowGroupSizeAtMost(memoryShare);
+        // Every new value is checked against the existing columns, so the whole input is scanned
+        ParquetSchema schema = conversion.time(Stage.INFER, () -> {
+            ParquetSchema target = readParquetSchema(existing);
+            checkAppendable(inferColumns(source, Long.MAX_VALUE), target);
+            return target;
+        });
         try {
-            tempFile = File.createTempFile("parquet_", Format.PARQUET.getSuffix(), new File(tempDir));
-            List<Map<String, Object>> typedData = convertToTypedData(data);
-            Schema schema = inferSchema(typedData);
-            
-            try (ParquetWriter<GenericRecord> writer = AvroParquetWriter
-                    .<GenericRecord>builder(new org.apache.hadoop.fs.Path(tempFile.getAbsolutePath()))
-                    .withSchema(schema)
-                    .withCompressionCodec(CompressionCodecName.SNAPPY)
-                    .build()) {
-                for (Map<String, Object> record : typedData) {
-                    GenericRecord avroRecord = new GenericData.Record(schema);
-                    for (Map.Entry<String, Object> entry : record.entrySet()) {
-                        avroRecord.put(entry.getKey(), convertToAvroType(entry.getValue(),
-                                schema.getField(entry.getKey()).schema()));
-                    }
-                    writer.write(avroRecord);
-                }
+            return conversion.time(Stage.ENCODE, () -> writeParquetFile(source, schema, true, options, memoryShare));
+        } catch (TypeMismatchException e) {
+            // Column types match, but decimals may exceed their precision or scale and nested values differ in shape
+            throw new ConversionException("New rows do not fit the columns of the existing Parquet file: "
+                    + "a decimal exceeds the precision or scale of its column, or a nested value has another structure");
+        }
+    }
+
+    /**
+     * Writes {@code existing} followed by the row groups of {@code appended}. The row groups of both are copied
+     * as they are, so the work does not depend on the size of the existing file beyond copying its bytes.
+     */
+    public void mergeParquet(InputFile existing, SpillOutputFile appended, OutputStream out) throws IOException {
+        try (ParquetFileMerger merger = new ParquetFileMerger(new StreamOutputFile(out),
+                parquetDefaults.getRowGroupSize().toBytes())) {
+            merger.append(existing);
+            merger.append(appended.toInputFile());
+        }
+    }
+
+    private static ParquetSchema readParquetSchema(InputFile file) {
+        try {
+            return ParquetSchema.read(file);
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof ConversionException conversionException) {
+                throw conversionException;
             }
-            return new UrlResource(tempFile.toURI());
-        } catch (IOException e) {
-            if (tempFile != null && tempFile.exists()) {
-                tempFile.delete();
+            throw new ConversionException("Failed to read the existing Parquet file: " + e.getMessage(), e);
+        }
+    }
+
+    private static void checkAppendable(SchemaAccumulator columns, ParquetSchema target) {
+        Map<String, ColumnType> targetTypes = target.getColumnTypes();
+        Schema schema = columns.toSchema();
+        for (Map.Entry<String, ColumnType> column : columns.getColumnTypes().entrySet()) {
+            ColumnType targetType = targetTypes.get(column.getKey());
+            if (targetType == null) {
+                throw new ConversionException("Column '" + column.getKey() + "' is not in the existing Parquet file");
+            }
+            // Widening along the inference lattice: the existing type holds every value of the new one
+            if (column.getValue().join(targetType) != targetType) {
+                throw new ConversionException("Column '" + column.getKey() + "' has " + column.getValue()
+                        + " values, which do not fit its type " + targetType + " in the existing Parquet file");
+            }
+            if (column.getValue() == ColumnType.DECIMAL) {
+                LogicalTypes.Decimal decimal = (LogicalTypes.Decimal) AvroValues.nonNullBranch(
+                        schema.getField(column.getKey()).schema()).getLogicalType();
+                LogicalTypes.Decimal targetDecimal = (LogicalTypes.Decimal) AvroValues.nonNullBranch(
+                        target.getAvroSchema().getField(column.getKey()).schema()).getLogicalType();
+                if (decimal.getScale() > targetDecimal.getScale() || decimal.getPrecision() - decimal.getScale()
+                        > targetDecimal.getPrecision() - targetDecimal.getScale()) {
+                    throw new ConversionException("Column '" + column.getKey() + "' has decimals up to DECIMAL("
+                            + decimal.getPrecision() + "," + decimal.getScale() + "), which do not fit its type DECIMAL("
+                            + targetDecimal.getPrecision() + "," + targetDecimal.getScale()
+                            + ") in the existing Parquet file");
+                }
             }
-            throw new ConversionException("Failed to write Parquet file: " + e.getMessage(), e);
         }
     }
-    public Resource writeToCsv(List<Map<String, Object>> data) {
-        if (data == null || data.isEmpty()) {
-            throw new ConversionException("Cannot write empty data to CSV");
+
+    /**
+     * Writes a dataset of files split by {@code layout} instead of a single file, see {@link ParquetDatasetWriter}.
+     */
+    public ParquetDataset writeToParquetDataset(RowSourceProvider source, DatasetLayout layout,
+                                                ParquetWriteOptions overrides, MeteredConversion conversion) {
+        layout.validate();
+        ParquetWriteOptions options = parquetDefaults.overrideWith(overrides);
+        long rowLimit = inferenceMode == InferenceMode.SAMPLE ? sampleSize : Long.MAX_VALUE;
+        SchemaAccumulator sampled = conversion.time(Stage.INFER, () -> inferColumns(source, rowLimit));
+        // A partition column missing from the sample may still come later
+        SchemaAccumulator columns = sampled.isComplete()
+                || sampled.getColumnTypes().keySet().containsAll(layout.getPartitionBy())
+                ? sampled
+                : conversion.time(Stage.INFER, () -> inferColumns(source, Long.MAX_VALUE));
+        try {
+            return conversion.time(Stage.ENCODE, () -> writeDataset(source, columns, layout, options));
+        } catch (TypeMismatchException e) {
+            SchemaAccumulator allColumns = conversion.time(Stage.INFER, () -> inferColumns(source, Long.MAX_VALUE));
+            return conversion.time(Stage.ENCODE, () -> writeDataset(source, allColumns, layout, options));
         }
-        
-        File tempFile = null;
+    }
+
+    private SchemaAccumulator inferColumns(RowSourceProvider source, long rowLimit) {
+        return inferColumns(source, rowLimit, "Parquet");
+    }
+
+    private SchemaAccumulator inferColumns(RowSourceProvider source, long rowLimit, String targetFormat) {
+        SchemaAccumulator columns = new SchemaAccumulator();
+        try (RowSource data = source.open()) {
+            if (!data.hasNext()) {
+                throw new ConversionException("Cannot write empty data to " + targetFormat);
+            }
+            while (data.hasNext()) {
+                if (columns.getRowCount() >= rowLimit) {
+                    columns.markIncomplete();
+                    break;
+                }
+                columns.accept(data.next());
+            }
+        }
+        return columns;
+    }
+
+    private SpillOutputFile writeParquetFile(RowSourceProvider source, SchemaAccumulator columns, ParquetWriteOptions options,
+                                             long memoryShare) {
+        return writeParquetFile(source, schemaCache.get(columns), !columns.isComplete(), options, memoryShare);
+    }
+
+    /**
+     * @param strict the schema may not cover every value, a {@link TypeMismatchException} is passed on
+     */
+    private SpillOutputFile writeParquetFile(RowSourceProvider source, ParquetSchema schema, boolean strict,
+                                             ParquetWriteOptions options, long memoryShare) {
+        Map<String, ColumnType> columnTypes = schema.getColumnTypes();
+        SpillOutputFile outputFile = newSpillFile();
         try {
-            tempFile = File.createTempFile("csv_", Format.CSV.getSuffix(), new File(tempDir));
-            try (CSVWriter writer = new CSVWriter(new FileWriter(tempFile, StandardCharsets.UTF_8))) {
-                String[] headers = data.get(0).keySet().toArray(new String[0]);
-                writer.writeNext(headers);
-                
-                for (Map<String, Object> record : data) {
-                    String[] row = new String[headers.length];
-                    for (int i = 0; i < headers.length; i++) {
-                        Object value = record.get(headers[i]);
-                        row[i] = value != null ? value.toString() : "";
+            try (RowSource data = source.open()) {
+                if (conversionPool.limit(parquetParallelism) > 1) {
+                    writeParts(outputFile, schema, options, data, strict, memoryShare);
+                } else {
+                    RecordBatch batch = new RecordBatch(columnTypes, batchSize, strict);
+                    try (BatchSink sink = openSink(outputFile, schema, options)) {
+                        while (data.fillBatch(batch) > 0) {
+                            sink.write(batch);
+                        }
                     }
-                    writer.writeNext(row);
                 }
             }
-            return new UrlResource(tempFile.toURI());
-        } catch (IOException e) {
-            if (tempFile != null && tempFile.exists()) {
-                tempFile.delete();
+            return outputFile;
+        } catch (IOException | RuntimeException e) {
+            outputFile.close();
+            if (e instanceof TypeMismatchException && strict) {
+                throw (TypeMismatchException) e;
             }
-            throw new ConversionException("Failed to write CSV file: " + e.getMessage(), e);
+            if (e instanceof ConversionException conversionException) {
+                throw conversionException;
+            }
+            throw new ConversionException("Failed to write Parquet file: " + e.getMessage(), e);
         }
     }
-    public Resource writeToJson(List<Map<String, Object>> data) {
-        if (data == null || data.isEmpty()) {
-            throw new ConversionException("Cannot write empty data to JSON");
+
+    private ParquetDataset writeDataset(RowSourceProvider source, SchemaAccumulator columns, DatasetLayout layout,
+                                        ParquetWriteOptions options) {
+        Map<String, ColumnType> columnTypes = columns.getColumnTypes();
+        for (String column : layout.getPartitionBy()) {
+            if (!columnTypes.containsKey(column)) {
+                throw new ConversionException("Unknown partition column: " + column);
+            }
+            if (columnTypes.get(column) == ColumnType.NESTED) {
+                throw new ConversionException("Cannot partition by nested column: " + column);
+            }
         }
-        
-        File tempFile = null;
-        try {
-            tempFile = File.createTempFile("json_", Format.JSON.getSuffix(), new File(tempDir));
-            jsonMapper.enable(SerializationFeature.INDENT_OUTPUT);
-            jsonMapper.writeValue(tempFile, data);
-            return new UrlResource(tempFile.toURI());
-        } catch (IOException e) {
-            if (tempFile != null && tempFile.exists()) {
-                tempFile.delete();
+        if (columnTypes.size() == layout.getPartitionBy().size()) {
+            throw new ConversionException("Cannot partition by every column, the files would have no columns");
+        }
+        ParquetSchema schema = schemaCache.get(columns);
+        // Part files go straight to disk: there may be thousands of them, and only the open ones need memory
+        ParquetDatasetWriter writer = new ParquetDatasetWriter(schema,
+                schemaCache.get(columns.without(layout.getPartitionBy())), layout, batchSize,
+                () -> new SpillOutputFile(0, new File(tempDir)),
+                (file, fileSchema) -> openSink(file, fileSchema, options),
+                datasetMaxOpenWriters, datasetMemoryBudget.toBytes(), datasetMaxFiles);
+        try (RowSource data = source.open()) {
+            RecordBatch batch = new RecordBatch(schema.getColumnTypes(), batchSize, !columns.isComplete());
+            while (data.fillBatch(batch) > 0) {
+                writer.write(batch);
             }
-            throw new ConversionException("Failed to write JSON file: " + e.getMessage(), e);
+            return writer.finish();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            if (e instanceof TypeMismatchException && !columns.isComplete()) {
+                throw (TypeMismatchException) e;
+            }
+            if (e instanceof ConversionException conversionException) {
+                throw conversionException;
+            }
+            throw new ConversionException("Failed to write Parquet dataset: " + e.getMessage(), e);
         }
     }
-    public Resource writeToXml(List<Map<String, Object>> data) {
-        if (data == null || data.isEmpty()) {
-            throw new ConversionException("Cannot write empty data to XML");
+
+    /**
+     * Reads segments of {@code segmentRows} rows, encodes and compresses each into its own part file on the pool
+     * and copies the finished parts into the output in input order. Each part ends with its own row group.
+     * Segments waiting for or being encoded keep up to {@code memoryShare} bytes of rows in memory together,
+     * the rest spill to {@code temp-dir}.
+     */
+    private void writeParts(OutputFile outputFile, ParquetSchema schema, ParquetWriteOptions options, RowSource data,
+                            boolean strict, long memoryShare) throws IOException {
+        int parallelism = conversionPool.limit(parquetParallelism);
+        Deque<Future<SpillOutputFile>> pending = new ArrayDeque<>();
+        AtomicLong buffered = new AtomicLong();
+        try (ParquetFileMerger merger = new ParquetFileMerger(outputFile, options.getRowGroupSize().toBytes())) {
+            BatchBuffer segment;
+            while (!(segment = readSegment(data, schema.getColumnTypes(), strict, buffered, memoryShare)).isEmpty()) {
+                if (pending.size() >= parallelism) {
+                    appendPart(merger, pending.poll());
+                }
+                BatchBuffer batches = segment;
+                pending.add(conversionPool.submit(() -> writePart(batches, schema, options)));
+            }
+            segment.close();
+            while (!pending.isEmpty()) {
+                appendPart(merger, pending.poll());
+            }
+        } finally {
+            for (Future<SpillOutputFile> part : pending) {
+                try {
+                    ConversionPool.await(part).close();
+                } catch (IOException | RuntimeException ignored) {
+                    // the part failed, there is nothing to clean up
+                }
+            }
         }
-        
-        File tempFile = null;
+    }
+    private BatchBuffer readSegment(RowSource data, Map<String, ColumnType> columnTypes, boolean strict,
+                                    AtomicLong buffered, long memoryShare) throws IOException {
+        BatchBuffer segment = new BatchBuffer(() -> new RecordBatch(columnTypes, batchSize, strict),
+                buffered, memoryShare, new File(tempDir));
         try {
-            tempFile = File.createTempFile("xml_", Format.XML.getSuffix(), new File(tempDir));
-            xmlMapper.enable(SerializationFeature.INDENT_OUTPUT);
-            Map<String, Object> wrapper = new HashMap<>();
-            wrapper.put("records", data);
-            xmlMapper.writeValue(tempFile, wrapper);
-            return new UrlResource(tempFile.toURI());
-        } catch (IOException e) {
-            if (tempFile != null && tempFile.exists()) {
-                tempFile.delete();
+            RecordBatch batch = new RecordBatch(columnTypes, batchSize, strict);
+            while (segment.getRows() < segmentRows && data.fillBatch(batch) > 0) {
+                batch = segment.add(batch);
             }
-            throw new ConversionException("Failed to write XML file: " + e.getMessage(), e);
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            segment.close();
+            throw e;
         }
     }
-    private List<Map<String, Object>> convertToTypedData(List<Map<String, Object>> data) {
-        if (data.isEmpty()) return data;
-        Map<String, Class<?>> columnTypes = new HashMap<>();
-        Set<String> allKeys = new LinkedHashSet<>();
-        for (Map<String, Object> record : data) {
-            allKeys.addAll(record.keySet());
-        }
-        for (String key : allKeys) {
-            columnTypes.put(key, determineColumnType(data, key));
+    private SpillOutputFile writePart(BatchBuffer segment, ParquetSchema schema, ParquetWriteOptions options)
+            throws IOException {
+        SpillOutputFile part = newSpillFile();
+        try (segment) {
+            try (BatchSink sink = openSink(part, schema, options)) {
+                segment.forEach(sink::write);
+            }
+            return part;
+        } catch (IOException | RuntimeException e) {
+            part.close();
+            throw e;
         }
-        List<Map<String, Object>> typedData = new ArrayList<>();
-        for (Map<String, Object> record : data) {
-            Map<String, Object> typedRecord = new LinkedHashMap<>();
-            for (String key : allKeys) {
-                Object value = record.get(key);
-                Class<?> targetType = columnTypes.get(key);
-                typedRecord.put(key, convertToType(value, targetType));
-            }
-            typedData.add(typedRecord);
+    }
+    private void appendPart(ParquetFileMerger merger, Future<SpillOutputFile> task) throws IOException {
+        try (SpillOutputFile part = ConversionPool.await(task)) {
+            merger.append(part.toInputFile());
         }
-        return typedData;
+    }
+    private SpillOutputFile newSpillFile() {
+        return new SpillOutputFile((int) spillThreshold.toBytes(), new File(tempDir));
     }
 
-    private Class<?> determineColumnType(List<Map<String, Object>> data, String column) {
-        boolean allNumbers = true;
-        boolean hasDecimal = false;
-        
-        for (Map<String, Object> record : data) {
-            Object value = record.get(column);
-            if (value != null && value instanceof String) {
-                String strValue = value.toString().trim();
-                if (strValue.isEmpty()) {
-                    continue;
-                }
-                
-                // Check for number
-                try {
-                    if (strValue.contains(".") || strValue.contains("e") || strValue.contains("E")) {
-                        Double.parseDouble(strValue);
-                        hasDecimal = true;
-                    } else {
-                        Long.parseLong(strValue);
+    private BatchSink openSink(OutputFile outputFile, ParquetSchema schema, ParquetWriteOptions options)
+            throws IOException {
+        // The direct writer handles flat columns only, nested values always go through Avro records
+        if (parquetWriterMode == ParquetWriterMode.DIRECT && !schema.hasNestedColumns()) {
+            ParquetWriter<BatchRow> writer = options.applyTo(BatchParquetWriter.builder(outputFile)
+                            .withSchema(schema)
+                            .withWriteMode(ParquetFileWriter.Mode.OVERWRITE))
+                    .build();
+            BatchRow cursor = new BatchRow();
+            return new BatchSink() {
+                @Override
+                public void write(RecordBatch batch) throws IOException {
+                    for (int row = 0; row < batch.size(); row++) {
+                        writer.write(cursor.moveTo(batch, row));
                     }
-                } catch (NumberFormatException e) {
-                    allNumbers = false;
                 }
-            } else if (value != null) {
-                // Already typed value
-                if (!(value instanceof Number)) {
-                    allNumbers = false;
-                } else if (value instanceof Double || value instanceof Float) {
-                    hasDecimal = true;
+
+                @Override
+                public long getDataSize() {
+                    return writer.getDataSize();
                 }
-            }
+
+                @Override
+                public void close() throws IOException {
+                    writer.close();
+                }
+            };
         }
-        
-        if (allNumbers) {
-            if (hasDecimal) {
-                return Double.class;
-            } else {
-                boolean fitsInInteger = true;
-                for (Map<String, Object> record : data) {
-                    Object value = record.get(column);
-                    if (value != null) {
-                        String strValue = value.toString().trim();
-                        if (!strValue.isEmpty()) {
-                            try {
-                                long longValue = Long.parseLong(strValue);
-                                if (longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE) {
-                                    fitsInInteger = false;
-                                    break;
-                                }
-                            } catch (NumberFormatException e) {
-                                // Skip
-                            }
-                        }
+        ParquetWriter<GenericRecord> writer = options.applyTo(AvroParquetWriter
+                        .<GenericRecord>builder(outputFile)
+                        .withConf(ParquetSchema.newWriterConfiguration())
+                        .withSchema(schema.getAvroSchema())
+                        .withWriteMode(ParquetFileWriter.Mode.OVERWRITE))
+                .build();
+        // The writer encodes each record before returning, so one Avro record is reused for all rows
+        GenericData.Record avroRecord = new GenericData.Record(schema.getAvroSchema());
+        List<Schema.Field> fields = schema.getAvroSchema().getFields();
+        boolean[] converted = new boolean[fields.size()];
+        int column = 0;
+        for (ColumnType type : schema.getColumnTypes().values()) {
+            converted[column++] = type == ColumnType.DECIMAL || type == ColumnType.NESTED;
+        }
+        AvroValues avroValues = new AvroValues();
+        return new BatchSink() {
+            @Override
+            public void write(RecordBatch batch) throws IOException {
+                for (int row = 0; row < batch.size(); row++) {
+                    for (int column = 0; column < batch.getColumnCount(); column++) {
+                        Object value = batch.getColumn(column).get(row);
+                        avroRecord.put(column, converted[column] ? avroValues.toAvro(value, fields.get(column).schema()) : value);
                     }
+                    writer.write(avroRecord);
                 }
-                return fitsInInteger ? Integer.class : Long.class;
             }
-        }
-        
-        // Check for boolean only if not all numbers
-        boolean allBooleans = true;
-        for (Map<String, Object> record : data) {
-            Object value = record.get(column);
-            if (value != null) {
-                String strValue = value.toString().toLowerCase().trim();
-                if (!strValue.isEmpty() &&
-                        !strValue.equals("true") &&
-                        !strValue.equals("false") &&
-                        !strValue.equals("1") &&
-                        !strValue.equals("0")) {
-                    allBooleans = false;
-                    break;
-                }
+
+            @Override
+            public long getDataSize() {
+                return writer.getDataSize();
             }
-        }
-        if (allBooleans) return Boolean.class;
-        
-        return String.class;
+
+            @Override
+            public void close() throws IOException {
+                writer.close();
+            }
+        };
+    }
+    /**
+     * Infers the columns of Arrow output. The second pass streams straight to the response and cannot start over
+     * once sent, so the whole input is scanned whatever {@code app.inference.mode} is.
+     */
+    public ParquetSchema inferArrowSchema(RowSourceProvider source) {
+        return schemaCache.get(inferColumns(source, Long.MAX_VALUE, "Arrow"));
     }
 
-    private Object convertToType(Object value, Class<?> targetType) {
-        if (value == null || value.toString().isEmpty()) return null;
-        String strValue = value.toString();
-        try {
-            return switch (targetType.getSimpleName()) {
-                case "Integer" -> Integer.parseInt(strValue);
-                case "Long" -> Long.parseLong(strValue);
-                case "Double" -> Double.parseDouble(strValue);
-                case "Boolean" -> parseBoolean(strValue);
-                default -> strValue;
-            };
-        } catch (NumberFormatException e) {
-            return strValue;
+    /**
+     * Writes Arrow IPC record batches of {@code app.batch-size} rows, in the file format or the streaming format.
+     */
+    public void writeToArrow(RowSource data, ParquetSchema schema, OutputStream out, boolean fileFormat) {
+        try (ArrowBatchWriter writer = new ArrowBatchWriter(schema, CloseShieldOutputStream.wrap(out), fileFormat)) {
+            RecordBatch batch = new RecordBatch(schema.getColumnTypes(), batchSize, false);
+            while (data.fillBatch(batch) > 0) {
+                writer.write(batch);
+            }
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof ConversionException conversionException) {
+                throw conversionException;
+            }
+            throw new ConversionException("Failed to write Arrow file: " + e.getMessage(), e);
         }
     }
-    private Object convertToAvroType(Object value, Schema schema) {
-        if (value == null) return null;
-        if (schema.getType() == Schema.Type.UNION) {
-            for (Schema type : schema.getTypes()) {
-                if (type.getType() != Schema.Type.NULL) {
-                    return convertToAvroType(value, type);
+    public void writeToCsv(RowSource data, OutputStream out) {
+        if (!data.hasNext()) {
+            throw new ConversionException("Cannot write empty data to CSV");
+        }
+        
+        try {
+            try (CSVWriter writer = new CSVWriter(new OutputStreamWriter(CloseShieldOutputStream.wrap(out), StandardCharsets.UTF_8))) {
+                Map<String, Object> first = data.next();
+                String[] headers = first.keySet().toArray(new String[0]);
+                writer.writeNext(headers);
+                
+                Map<String, Object> record = first;
+                while (record != null) {
+                    String[] row = new String[headers.length];
+                    for (int i = 0; i < headers.length; i++) {
+                        Object value = record.get(headers[i]);
+                        row[i] = value == null ? ""
+                                : value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+                    }
+                    writer.writeNext(row);
+                    record = data.hasNext() ? data.next() : null;
                 }
             }
-            return null;
-        }
-        switch (schema.getType()) {
-            case INT:
-                if (value instanceof Number) return ((Number) value).intValue();
-                break;
-            case LONG:
-                if (value instanceof Number) return ((Number) value).longValue();
-                break;
-            case FLOAT:
-                if (value instanceof Number) return ((Number) value).floatValue();
-                break;
-            case DOUBLE:
-                if (value instanceof Number) return ((Number) value).doubleValue();
-                break;
-            case BOOLEAN:
-                if (value instanceof Boolean) return value;
-                break;
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof ConversionException conversionException) {
+                throw conversionException;
+            }
+            throw new ConversionException("Failed to write CSV file: " + e.getMessage(), e);
         }
-        return value.toString();
     }
-    private Schema inferSchema(List<Map<String, Object>> typedData) {
-        if (typedData.isEmpty()) {
-            throw new ConversionException("Cannot infer schema from empty data");
-        }
-        Set<String> allKeys = new LinkedHashSet<>();
-        for (Map<String, Object> record : typedData) {
-            allKeys.addAll(record.keySet());
+    public void writeToJson(RowSource data, OutputStream out) {
+        if (!data.hasNext()) {
+            throw new ConversionException("Cannot write empty data to JSON");
         }
-        List<Schema.Field> fields = new ArrayList<>();
-        for (String key : allKeys) {
-            Schema fieldSchema = inferFieldSchema(typedData, key);
-            Schema nullableSchema = Schema.createUnion(
-                    Arrays.asList(Schema.create(Schema.Type.NULL), fieldSchema)
-            );
-            fields.add(new Schema.Field(key, nullableSchema, null, null));
+        
+        try {
+            try (JsonGenerator generator = jsonArrayWriter.createGenerator(CloseShieldOutputStream.wrap(out))) {
+                generator.writeStartArray();
+                while (data.hasNext()) {
+                    jsonArrayWriter.writeValue(generator, data.next());
+                }
+                generator.writeEndArray();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof ConversionException conversionException) {
+                throw conversionException;
+            }
+            throw new ConversionException("Failed to write JSON file: " + e.getMessage(), e);
         }
-        return Schema.createRecord("Record", null, null, false, fields);
     }
-    
-    private Schema inferFieldSchema(List<Map<String, Object>> typedData, String fieldName) {
-        Set<Class<?>> types = new HashSet<>();
-        for (Map<String, Object> record : typedData) {
-            Object value = record.get(fieldName);
-            if (value != null) {
-                types.add(value.getClass());
+    /**
+     * Writes one compact JSON object per line.
+     */
+    public void writeToNdjson(RowSource data, OutputStream out) {
+        if (!data.hasNext()) {
+            throw new ConversionException("Cannot write empty data to NDJSON");
+        }
+        
+        try {
+            try (JsonGenerator generator = ndjsonWriter.createGenerator(CloseShieldOutputStream.wrap(out))) {
+                while (data.hasNext()) {
+                    ndjsonWriter.writeValue(generator, data.next());
+                }
+                generator.writeRaw('\n');
             }
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof ConversionException conversionException) {
+                throw conversionException;
+            }
+            throw new ConversionException("Failed to write NDJSON file: " + e.getMessage(), e);
         }
-        if (types.isEmpty()) {
-            return Schema.create(Schema.Type.STRING);
+    }
+    public void writeToXml(RowSource data, OutputStream out) {
+        if (!data.hasNext()) {
+            throw new ConversionException("Cannot write empty data to XML");
         }
-        // Check if any type is a Map or List implementation
-        for (Class<?> type : types) {
-            if (Map.class.isAssignableFrom(type) || List.class.isAssignableFrom(type)) {
-                return Schema.create(Schema.Type.STRING);
+        
+        try {
+            try (ToXmlGenerator generator = (ToXmlGenerator) xmlWriter.createGenerator(CloseShieldOutputStream.wrap(out), JsonEncoding.UTF8)) {
+                // Same layout as serializing a {"records": [...]} map: repeated <records> under the root
+                generator.setNextName(new QName("HashMap"));
+                generator.writeStartObject();
+                while (data.hasNext()) {
+                    generator.writeFieldName("records");
+                    xmlWriter.writeValue(generator, data.next());
+                }
+                generator.writeEndObject();
             }
-        }
-        Schema.Type priorityType = null;
-        for (Class<?> type : types) {
-            priorityType = switch (type.getSimpleName()) {
-                case "Double" -> Schema.Type.DOUBLE;
-                case "Float" -> Schema.Type.FLOAT;
-                case "Long" -> Schema.Type.LONG;
-                case "Integer" -> Schema.Type.INT;
-                case "Boolean" -> Schema.Type.BOOLEAN;
-                default -> null;
-            };
-            if (priorityType != null) {
-                break;
+        } catch (IOException | RuntimeException e) {
+            if (e instanceof ConversionException conversionException) {
+                throw conversionException;
             }
+            throw new ConversionException("Failed to write XML file: " + e.getMessage(), e);
         }
-        return priorityType != null ? Schema.create(priorityType) : Schema.create(Schema.Type.STRING);
-    }
-    
-    private boolean parseBoolean(String value) {
-        String lowerValue = value.toLowerCase().trim();
-        return lowerValue.equals("true") || lowerValue.equals("1");
     }
 }
@@ -0,0 +1,52 @@
+package ru.isands.newconverter.parquet;
+
+import org.junit.jupiter.api.Test;
+import ru.isands.newconverter.pipeline.RecordBatch;
+import ru.isands.newconverter.schema.ColumnType;
+import ru.isands.newconverter.schema.SchemaAccumulator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParquetSchemaCacheTest {
+
+    @Test
+    void blankColumnDoesNotShadowPopulatedColumn() {
+        ParquetSchemaCache cache = new ParquetSchemaCache(16);
+        ParquetSchema blank = cache.get(accumulate(row("1", ""), row("2", "")));
+        assertEquals(ColumnType.EMPTY, blank.getColumnTypes().get("name"));
+
+        ParquetSchema populated = cache.get(accumulate(row("1", "bob"), row("2", "alice")));
+        assertEquals(ColumnType.STRING, populated.getColumnTypes().get("name"));
+        RecordBatch batch = new RecordBatch(populated.getColumnTypes(), 2, false);
+        batch.appendRow(row("1", "bob"));
+        assertEquals("bob", batch.getColumn(1).get(0));
+    }
+
+    @Test
+    void bitColumnDoesNotShadowIntColumn() {
+        ParquetSchemaCache cache = new ParquetSchemaCache(16);
+        ParquetSchema bits = cache.get(accumulate(row("0", "x"), row("1", "y")));
+        assertEquals(ColumnType.BIT, bits.getColumnTypes().get("id"));
+
+        ParquetSchema ints = cache.get(accumulate(row("7", "x"), row("42", "y")));
+        assertEquals(ColumnType.INT, ints.getColumnTypes().get("id"));
+    }
+
+    private static SchemaAccumulator accumulate(Map<String, Object>... rows) {
+        SchemaAccumulator columns = new SchemaAccumulator();
+        for (Map<String, Object> row : rows) {
+            columns.accept(row);
+        }
+        return columns;
+    }
+
+    private static Map<String, Object> row(String id, String name) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", id);
+        row.put("name", name);
+        return row;
+    }
+}
@@ -0,0 +1,69 @@
+package ru.isands.newconverter.pipeline;
+
+import org.junit.jupiter.api.Test;
+import ru.isands.newconverter.schema.ColumnType;
+import ru.isands.newconverter.schema.TypeMismatchException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ColumnVectorTest {
+
+    @Test
+    void resetReleasesDecimals() {
+        ColumnVector vector = ColumnVector.create(ColumnType.DECIMAL, 4);
+        vector.append(new BigDecimal("1.25"));
+        vector.append(new BigDecimal("2.50"));
+        vector.reset();
+        assertNull(vector.get(0));
+        assertNull(vector.get(1));
+    }
+
+    @Test
+    void resetReleasesNestedValues() {
+        ColumnVector vector = ColumnVector.create(ColumnType.NESTED, 4);
+        vector.append(Map.of("k", 1));
+        vector.append(List.of(1, 2));
+        vector.reset();
+        assertNull(vector.get(0));
+        assertNull(vector.get(1));
+    }
+
+    @Test
+    void integralNumbersAreKeptExactly() {
+        ColumnVector ints = ColumnVector.create(ColumnType.INT, 4);
+        ints.append((short) 7);
+        ints.append(BigInteger.valueOf(42));
+        assertEquals(7, ints.get(0));
+        assertEquals(42, ints.get(1));
+
+        ColumnVector longs = ColumnVector.create(ColumnType.LONG, 4);
+        longs.append((byte) 3);
+        longs.append(new BigInteger("9223372036854775807"));
+        assertEquals(3L, longs.get(0));
+        assertEquals(Long.MAX_VALUE, longs.get(1));
+    }
+
+    @Test
+    void fractionalNumbersDoNotFitIntegerColumns() {
+        assertThrows(TypeMismatchException.class, () -> ColumnVector.create(ColumnType.INT, 4).append(3.7));
+        assertThrows(TypeMismatchException.class, () -> ColumnVector.create(ColumnType.LONG, 4).append(3.7));
+        assertThrows(TypeMismatchException.class,
+                () -> ColumnVector.create(ColumnType.LONG, 4).append(new BigDecimal("1.5")));
+    }
+
+    @Test
+    void oversizedIntegersDoNotWrap() {
+        BigInteger oversized = new BigInteger("123456789012345678901234567890");
+        assertThrows(TypeMismatchException.class, () -> ColumnVector.create(ColumnType.LONG, 4).append(oversized));
+        assertThrows(TypeMismatchException.class, () -> ColumnVector.create(ColumnType.INT, 4).append(oversized));
+        assertThrows(TypeMismatchException.class,
+                () -> ColumnVector.create(ColumnType.INT, 4).append(Long.MAX_VALUE));
+    }
+}
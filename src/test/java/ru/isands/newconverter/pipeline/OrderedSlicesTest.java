@@ -0,0 +1,87 @@
+package ru.isands.newconverter.pipeline;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderedSlicesTest {
+    private final ConversionPool pool = new ConversionPool(4);
+
+    @AfterEach
+    void closePool() {
+        pool.close();
+    }
+
+    @Test
+    void handsOutItemsInPartOrder() throws IOException {
+        List<Callable<OrderedSlices.SliceReader<Integer>>> parts = new ArrayList<>();
+        for (int part = 0; part < 10; part++) {
+            parts.add(range(part * 100, part * 100 + 100, new AtomicInteger()));
+        }
+        OrderedSlices<Integer> slices = new OrderedSlices<>(pool, 4, 7, parts.iterator());
+        List<Integer> items = new ArrayList<>();
+        List<Integer> slice;
+        while ((slice = slices.next()) != null) {
+            assertTrue(slice.size() <= 7);
+            items.addAll(slice);
+        }
+        assertEquals(IntStream.range(0, 1000).boxed().toList(), items);
+    }
+
+    @Test
+    void readsOnlyAFewSlicesAhead() throws Exception {
+        AtomicInteger read = new AtomicInteger();
+        OrderedSlices<Integer> slices = new OrderedSlices<>(pool, 2, 10,
+                List.of(range(0, 1000, read), range(1000, 2000, read)).iterator());
+        slices.next();
+        Thread.sleep(200);
+        // The slice handed out and, for each part, the slices read ahead plus one being read
+        assertTrue(read.get() <= 10 * (1 + 2 * (OrderedSlices.SLICES_AHEAD + 1)), "read " + read.get());
+        slices.cancel();
+    }
+
+    @Test
+    void rethrowsFailuresOfParts() throws IOException {
+        Callable<OrderedSlices.SliceReader<Integer>> failing = () -> {
+            throw new IOException("broken row group");
+        };
+        OrderedSlices<Integer> slices = new OrderedSlices<>(pool, 2, 10,
+                List.of(range(0, 5, new AtomicInteger()), failing).iterator());
+        assertEquals(List.of(0, 1, 2, 3, 4), slices.next());
+        IOException e = assertThrows(IOException.class, slices::next);
+        assertEquals("broken row group", e.getMessage());
+    }
+
+    private static Callable<OrderedSlices.SliceReader<Integer>> range(int from, int to, AtomicInteger read) {
+        return () -> new OrderedSlices.SliceReader<>() {
+            private int next = from;
+
+            @Override
+            public List<Integer> next(int size) {
+                if (next >= to) {
+                    return null;
+                }
+                List<Integer> slice = new ArrayList<>();
+                while (slice.size() < size && next < to) {
+                    slice.add(next++);
+                    read.incrementAndGet();
+                }
+                return slice;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,78 @@
+package ru.isands.newconverter.pipeline;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParallelCsvReaderTest {
+    private static final char[] ALPHABET = {'a', 'b', ',', '"', '\\', '\n', '\r'};
+
+    private final ConversionPool pool = new ConversionPool(2);
+
+    @AfterEach
+    void closePool() {
+        pool.close();
+    }
+
+    @Test
+    void escapesOutsideQuotesAndFieldsMatchOpencsv() throws Exception {
+        assertSameRecords("a,b\n\\\"x,y\nc,d\n", 4);
+        assertSameRecords("a,\"b\"\"\n\"\\\",c\nd\n", 4);
+        assertSameRecords("x\"\"\\\"\ny\nz\n", 3);
+    }
+
+    @Test
+    void chunksEndWhereOpencsvEndsRecords() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder csv = new StringBuilder();
+            int length = random.nextInt(80);
+            for (int j = 0; j < length; j++) {
+                csv.append(ALPHABET[random.nextInt(ALPHABET.length)]);
+            }
+            assertSameRecords(csv.toString(), 1 + random.nextInt(8));
+        }
+    }
+
+    private void assertSameRecords(String csv, int chunkSize) throws Exception {
+        List<String[]> expected = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(new StringReader(csv))) {
+            String[] record;
+            while ((record = reader.readNext()) != null) {
+                expected.add(record);
+            }
+        } catch (IOException | CsvValidationException e) {
+            // opencsv rejects the input as a whole, nothing to compare
+            return;
+        }
+        List<String[]> actual = new ArrayList<>();
+        try (ParallelCsvReader reader = new ParallelCsvReader(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), pool, chunkSize)) {
+            String[] record;
+            while ((record = reader.readNext()) != null) {
+                actual.add(record);
+            }
+        }
+        assertEquals(expected.size(), actual.size(), () -> "records of " + escape(csv));
+        for (int i = 0; i < expected.size(); i++) {
+            int record = i;
+            assertArrayEquals(expected.get(i), actual.get(i), () -> "record " + record + " of " + escape(csv));
+        }
+    }
+
+    private static String escape(String csv) {
+        return csv.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+}